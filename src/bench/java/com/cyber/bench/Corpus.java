@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.bench;
+
+import com.cyber.util.LineSplitter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recorded downloader output replayed by benchmarks. Corpora are stored in
+ * resources/corpus as raw bytes, including CR separated progress updates.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class Corpus {
+
+    public static final String PROGRESS_STORM = "progress-storm";
+    public static final String TEMPLATE_PROGRESS = "template-progress";
+    public static final String PLAYLIST = "playlist";
+    public static final String NON_ASCII = "non-ascii";
+
+    private Corpus(){
+    }
+
+    /**
+     * @param name corpus name without extension
+     * @return raw output bytes
+     */
+    public static byte[] bytes(String name){
+        try(InputStream is = Corpus.class.getResourceAsStream("/corpus/" + name + ".txt")){
+            if (is==null) throw new IllegalArgumentException("unknown corpus: " + name);
+            return is.readAllBytes();
+        }catch(IOException ex){
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @param name corpus name without extension
+     * @return output split into lines the same way the process pump does
+     */
+    public static byte[][] lines(String name){
+        List<byte[]> lines = new ArrayList<>();
+        LineSplitter splitter = new LineSplitter(256, (buf, offset, length) ->
+            lines.add(Arrays.copyOfRange(buf, offset, offset + length)));
+        byte[] bytes = bytes(name);
+        splitter.feed(bytes, 0, bytes.length);
+        splitter.flush();
+        return lines.toArray(new byte[0][]);
+    }
+
+}
@@ -0,0 +1,426 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.bench;
+
+import com.cyber.util.Json;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stand-in for yt-dlp: accepts the command lines built by VideoDownloaderCommand
+ * and prints extraction, progress, merge and error output like the real one,
+ * writing dummy .part files and renaming them on completion. Nothing is fetched
+ * from network unless a {@link ThrottlingServer} is set.
+ * <p>
+ * Behavior is set by system properties (see {@link #install(Path, Map)}):
+ * <ul>
+ * <li>fake.size - bytes per video, default 2 MiB</li>
+ * <li>fake.progress_lines - progress lines per format, default 50</li>
+ * <li>fake.rate - progress lines per second, 0 is unthrottled, default 20</li>
+ * <li>fake.extract_ms - extraction delay, default 300</li>
+ * <li>fake.error_rate - probability of a network error in the middle of download, default 0</li>
+ * <li>fake.title - title prefix of videos, default "Test video"; a non-ASCII title
+ * needs a UTF-8 locale (file.encoding and sun.jnu.encoding) for the output paths</li>
+ * <li>fake.server - {@link ThrottlingServer} URL, media is fetched from it at its pace
+ * (fake.rate is not applied), HTTP 429 is reported as yt-dlp does</li>
+ * </ul>
+ * URL keywords: "unavailable" fails permanently, "429" fails with rate limiting,
+ * "list=" makes a playlist of "items=N" entries (default 3).
+ *
+ * @author Kirill Bereznyakov
+ */
+public class FakeDownloader {
+
+    private static final Set<String> VALUE_OPTIONS = Set.of("-f", "-o", "--proxy", "--socket-timeout",
+        "--extractor-retries", "--retries", "--download-archive", "--progress-template",
+        "--load-info-json", "--batch-file", "--print");
+
+    private final long size = Long.getLong("fake.size", 2 << 20);
+    private final int progressLines = Integer.getInteger("fake.progress_lines", 50);
+    private final int rate = Integer.getInteger("fake.rate", 20);
+    private final int extractMs = Integer.getInteger("fake.extract_ms", 300);
+    private final double errorRate = Double.parseDouble(System.getProperty("fake.error_rate", "0"));
+    private final String server = System.getProperty("fake.server", "");
+    private final String title = System.getProperty("fake.title", "Test video");
+
+    private final Map<String,String> options = new LinkedHashMap<>();
+    private final List<String> urls = new ArrayList<>();
+    private final PrintStream out = new PrintStream(System.out, true, StandardCharsets.UTF_8);
+    private final PrintStream err = new PrintStream(System.err, true, StandardCharsets.UTF_8);
+
+    public static void main(String[] args) throws Exception{
+        if (args.length==2 && args[0].equals("--install")){
+            System.out.println(install(Paths.get(args[1]), Map.of()));
+            return;
+        }
+        System.exit(new FakeDownloader(args).run());
+    }
+
+    /**
+     * Write executable launcher script of this class (yt-dlp-fake or yt-dlp-fake.cmd)
+     * to use as downloader exe. Extra JVM options can be passed in FAKE_YTDL_OPTS env variable.
+     * @param dir script directory
+     * @param properties fake.* behavior properties
+     * @return script path
+     * @throws IOException
+     */
+    public static Path install(Path dir, Map<String,String> properties) throws IOException{
+        boolean windows = System.getProperty("os.name").startsWith("Windows");
+        StringBuilder cmd = new StringBuilder();
+        cmd.append('"').append(Paths.get(System.getProperty("java.home"), "bin", "java")).append('"');
+        // small short-living JVM, thousands of them are started by load tests
+        cmd.append(" -XX:+UseSerialGC -XX:TieredStopAtLevel=1 -Xss256k -Xmx32m -Xshare:auto");
+        properties.forEach((key, value) -> cmd.append(" -D").append(key).append('=').append(value));
+        cmd.append(" -cp \"").append(System.getProperty("java.class.path")).append('"');
+        cmd.append(windows ? " %FAKE_YTDL_OPTS% " : " $FAKE_YTDL_OPTS ");
+        cmd.append(FakeDownloader.class.getName());
+
+        Files.createDirectories(dir);
+        Path script = dir.resolve(windows ? "yt-dlp-fake.cmd" : "yt-dlp-fake");
+        Files.writeString(script, windows
+            ? "@echo off\r\n" + cmd + " %*\r\n"
+            : "#!/bin/sh\nexec " + cmd + " \"$@\"\n");
+        script.toFile().setExecutable(true);
+        return script;
+    }
+
+    public FakeDownloader(String[] args){
+        for(int i=0; i<args.length; i++){
+            String arg = args[i];
+            if (arg.equals("--")){
+                // the rest are URLs
+                urls.addAll(Arrays.asList(args).subList(i+1, args.length));
+                break;
+            }
+            if (VALUE_OPTIONS.contains(arg) && i+1<args.length){
+                options.put(arg, args[++i]);
+            }else if (arg.startsWith("-")){
+                options.put(arg, "");
+            }else{
+                urls.add(arg);
+            }
+        }
+    }
+
+    /**
+     * @return exit code
+     */
+    public int run() throws IOException, InterruptedException{
+        if ("-".equals(options.get("--batch-file"))){
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            String line;
+            while((line = reader.readLine()) != null){
+                if (!line.isBlank()) urls.add(line.trim());
+            }
+        }
+
+        if (options.containsKey("-J")){
+            if (urls.size()!=1){
+                err.println("ERROR: -J expects one URL");
+                return 2;
+            }
+            return extract(urls.get(0));
+        }
+
+        if (options.containsKey("--load-info-json")){
+            Map<String,Object> info = Json.parseObject(Files.readString(Paths.get(options.get("--load-info-json")), StandardCharsets.UTF_8));
+            return download(info);
+        }
+
+        if (urls.isEmpty()){
+            err.println("ERROR: You must provide at least one URL.");
+            return 2;
+        }
+
+        int exitCode = 0;
+        for(String url: urls){
+            int code;
+            try{
+                // yt-dlp reports a failure after the extraction start
+                out.println("[youtube] Extracting URL: " + url);
+                out.println("[youtube] " + videoId(url) + ": Downloading webpage");
+                code = failure(url);
+                if (code==0){
+                    printExtraction(url);
+                    code = download(info(url));
+                }
+                if (code==0) printAfterMove(url);
+            }catch(IOException ex){
+                err.println("ERROR: " + ex.getMessage());
+                code = 1;
+            }
+            if (code!=0){
+                exitCode = code;
+                if (!options.containsKey("--ignore-errors")) break;
+            }
+        }
+        return exitCode;
+    }
+
+    private int extract(String url) throws InterruptedException{
+        int code = failure(url);
+        if (code!=0) return code;
+        Thread.sleep(extractMs);
+        out.println(Json.write(info(url)));
+        return 0;
+    }
+
+    private int failure(String url){
+        if (url.contains("unavailable")){
+            err.println("ERROR: [youtube] " + videoId(url) + ": Video unavailable. This video has been removed by the uploader");
+            return 1;
+        }
+        if (url.contains("429")){
+            err.println("ERROR: [youtube] " + videoId(url) + ": Unable to download webpage: HTTP Error 429: Too Many Requests");
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * --print after_move:TEMPLATE, only original_url field is supported.
+     */
+    private void printAfterMove(String url){
+        String print = options.get("--print");
+        if (print==null || !print.startsWith("after_move:")) return;
+        out.println(print.substring("after_move:".length()).replace("%(original_url)s", url));
+    }
+
+    private void printExtraction(String url) throws InterruptedException{
+        String id = videoId(url);
+        Thread.sleep(extractMs/2);
+        out.println("[youtube] " + id + ": Downloading ios player API JSON");
+        out.println("[youtube] " + id + ": Downloading m3u8 information");
+        Thread.sleep(extractMs/2);
+    }
+
+    @SuppressWarnings("unchecked")
+    private int download(Map<String,Object> info) throws IOException, InterruptedException{
+        if ("playlist".equals(info.get("_type"))){
+            List<Object> entries = (List<Object>)info.get("entries");
+            out.println("[download] Downloading playlist: " + info.get("title"));
+            for(int i=0; i<entries.size(); i++){
+                out.println("[download] Downloading item " + (i+1) + " of " + entries.size());
+                int code = download((Map<String,Object>)entries.get(i));
+                if (code!=0) return code;
+            }
+            out.println("[download] Finished downloading playlist: " + info.get("title"));
+            return 0;
+        }
+
+        String id = info.get("id").toString();
+        out.println("[info] " + id + ": Downloading 1 format(s): 137+140");
+
+        String base = outputFile(info);
+        Path video = Paths.get(base + ".f137.mp4");
+        Path audio = Paths.get(base + ".f140.m4a");
+        Path merged = Paths.get(base + ".mp4");
+        if (Files.exists(merged)){
+            out.println("[download] " + merged + " has already been downloaded");
+            return 0;
+        }
+
+        String host = URI.create(info.get("webpage_url").toString()).getHost();
+        if (!downloadFile(video, size*9/10, host)) return 1;
+        if (!downloadFile(audio, size - size*9/10, host)) return 1;
+
+        out.println("[Merger] Merging formats into \"" + merged + "\"");
+        Files.move(video, merged, StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(audio);
+        out.println("Deleting original file " + video + " (pass -k to keep)");
+        out.println("Deleting original file " + audio + " (pass -k to keep)");
+        return 0;
+    }
+
+    private boolean downloadFile(Path file, long total, String host) throws IOException, InterruptedException{
+        Path part = Paths.get(file + ".part");
+        if (file.getParent()!=null) Files.createDirectories(file.getParent());
+        if (options.containsKey("--no-continue")) Files.deleteIfExists(part);
+
+        out.println("[download] Destination: " + file);
+        boolean template = options.containsKey("--progress-template");
+        long step = Math.max(1, total / Math.max(1, progressLines));
+        byte[] chunk = new byte[(int)Math.min(step, 1 << 20)];
+        long start = System.nanoTime();
+        int lines = 0;
+
+        try(RandomAccessFile raf = new RandomAccessFile(part.toFile(), "rw")){
+            long done = raf.length();
+            if (done>0) out.println("[download] Resuming download at byte " + done);
+            raf.seek(done);
+
+            HttpURLConnection conn = server.isEmpty() ? null : request(host, file, done, total);
+            if (conn!=null && conn.getResponseCode()>=400){
+                err.println("ERROR: unable to download video data: HTTP Error " + conn.getResponseCode() + ": "
+                    + (conn.getResponseCode()==429 ? "Too Many Requests" : conn.getResponseMessage()));
+                return false;
+            }
+            InputStream in = conn!=null ? conn.getInputStream() : null;
+
+            while(done<total){
+                long n = Math.min(step, total-done);
+                if (in!=null){
+                    if (!copy(in, raf, chunk, n)){
+                        err.println("ERROR: unable to download video data: <urlopen error [Errno 104] Connection reset by peer>");
+                        return false;
+                    }
+                }else{
+                    for(long left=n; left>0; left-=chunk.length) raf.write(chunk, 0, (int)Math.min(chunk.length, left));
+                }
+                done += n;
+                lines++;
+
+                double elapsed = Math.max(1e-3, (System.nanoTime()-start) / 1e9);
+                double speed = done / elapsed;
+                int eta = (int)((total-done) / Math.max(1, speed));
+                if (template){
+                    out.println("[progress] " + done + " " + total + " NA " + String.format("%.1f", speed) + " " + eta + " NA NA");
+                }else{
+                    out.println(String.format("[download] %5.1f%% of %.2fMiB at %.2fMiB/s ETA %02d:%02d",
+                        100.0*done/total, total/1048576.0, speed/1048576.0, eta/60, eta%60));
+                }
+
+                if (errorRate>0 && ThreadLocalRandom.current().nextDouble() < errorRate/progressLines){
+                    err.println("ERROR: unable to download video data: <urlopen error [Errno 104] Connection reset by peer>");
+                    return false;
+                }
+                if (in==null && rate>0){
+                    long wait = start/1_000_000 + lines*1000L/rate - System.nanoTime()/1_000_000;
+                    if (wait>0) Thread.sleep(wait);
+                }
+            }
+            if (in!=null) in.close();
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING);
+        return true;
+    }
+
+    private HttpURLConnection request(String host, Path file, long from, long total) throws IOException{
+        String name = URLEncoder.encode(file.getFileName().toString(), StandardCharsets.UTF_8).replace("+", "%20");
+        HttpURLConnection conn = (HttpURLConnection)new URL(server + "/media/" + host + "/" + name + "?size=" + total).openConnection();
+        if (from>0) conn.setRequestProperty("Range", "bytes=" + from + "-");
+        return conn;
+    }
+
+    /**
+     * @return false if the stream ended early
+     */
+    private static boolean copy(InputStream in, RandomAccessFile raf, byte[] buf, long length) throws IOException{
+        while(length>0){
+            int n = in.read(buf, 0, (int)Math.min(buf.length, length));
+            if (n<0) return false;
+            raf.write(buf, 0, n);
+            length -= n;
+        }
+        return true;
+    }
+
+    private String outputFile(Map<String,Object> info){
+        String pattern = options.getOrDefault("-o", "%(title)s [%(id)s].%(ext)s");
+        String base = pattern
+            .replace("%(title)s", info.get("title").toString())
+            .replace("%(channel)s", info.get("channel").toString())
+            .replace("%(uploader)s", info.get("channel").toString())
+            .replace("%(id)s", info.get("id").toString())
+            .replace("%(resolution)s", "1920x1080");
+        int ext = base.lastIndexOf(".%(ext)s");
+        return ext>=0 ? base.substring(0, ext) : base.replace("%(ext)s", "mp4");
+    }
+
+    private Map<String,Object> info(String url){
+        if (url.contains("list=") && !options.containsKey("--no-playlist")){
+            int items = 3;
+            int pos = url.indexOf("items=");
+            if (pos>=0) items = Integer.parseInt(url.substring(pos+6).replaceAll("\\D.*", ""));
+
+            List<Object> entries = new ArrayList<>();
+            for(int i=1; i<=items; i++) entries.add(videoInfo(videoId(url) + "-" + i, url));
+
+            Map<String,Object> info = new LinkedHashMap<>();
+            info.put("_type", "playlist");
+            info.put("id", videoId(url));
+            info.put("title", "Playlist of " + title + " " + videoId(url));
+            info.put("entries", entries);
+            return info;
+        }
+        return videoInfo(videoId(url), url);
+    }
+
+    private Map<String,Object> videoInfo(String id, String url){
+        Map<String,Object> video = new LinkedHashMap<>();
+        video.put("format_id", "137");
+        video.put("ext", "mp4");
+        video.put("height", 1080);
+        video.put("vcodec", "avc1.640028");
+        video.put("acodec", "none");
+        video.put("filesize", size*9/10);
+
+        Map<String,Object> audio = new LinkedHashMap<>();
+        audio.put("format_id", "140");
+        audio.put("ext", "m4a");
+        audio.put("vcodec", "none");
+        audio.put("acodec", "mp4a.40.2");
+        audio.put("abr", 129.5);
+        audio.put("filesize", size - size*9/10);
+
+        Map<String,Object> info = new LinkedHashMap<>();
+        info.put("id", id);
+        info.put("title", title + " " + id);
+        info.put("channel", "Fake Channel");
+        info.put("duration", 212);
+        info.put("webpage_url", url);
+        info.put("formats", List.of(video, audio));
+        return info;
+    }
+
+    private static String videoId(String url){
+        int pos = url.indexOf("v=");
+        if (pos<0) pos = url.indexOf("list=")+3;
+        String id = pos>=0 ? url.substring(pos+2) : url;
+        id = id.replaceAll("[^A-Za-z0-9_-].*", "");
+        return id.isEmpty() ? Integer.toHexString(url.hashCode()) : id;
+    }
+
+}
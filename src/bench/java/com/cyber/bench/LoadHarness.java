@@ -0,0 +1,408 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.bench;
+
+import com.cyber.util.ProcessRuntime;
+import com.cyber.ytdl.ConcurrencyController;
+import com.cyber.ytdl.DownloadEvent;
+import com.cyber.ytdl.DownloadJob;
+import com.cyber.ytdl.DownloadJobState;
+import com.cyber.ytdl.DownloadQueue;
+import com.cyber.ytdl.MetadataCache;
+import com.cyber.ytdl.VideoDownloader;
+import com.cyber.ytdl.VideoDownloaderCommand;
+import com.cyber.ytdl.api.HttpApiServer;
+import com.cyber.ytdl.gui.UiUpdateDispatcher;
+import java.awt.EventQueue;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * End-to-end macro benchmark: drives many concurrent jobs through {@link DownloadQueue}
+ * and {@link VideoDownloader} processes running {@link FakeDownloader}, with UI updates
+ * dispatched to EDT the same way the main frame does. Prints one sample line per
+ * interval and a summary:
+ * <ul>
+ * <li>cpu - JVM process CPU load (downloader processes excluded)</li>
+ * <li>heap - used heap after the interval</li>
+ * <li>rss - JVM resident set size (Linux only)</li>
+ * <li>threads - live JVM threads</li>
+ * <li>edt - mean and max delay of a probe task posted to EDT every 10 ms</li>
+ * <li>ev/s, lines/s - events delivered to an event stream subscriber and output lines handled</li>
+ * <li>limit, MB/s - adaptive concurrency limit and throughput (with --adaptive)</li>
+ * </ul>
+ * Run with:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.cyber.bench.LoadHarness -Dbench.args="--jobs 500 --parallel 100"
+ * </pre>
+ * Options: --jobs N, --parallel N, --per-host N, --hosts N, --batch N, --single-phase,
+ * --fail-every N (every Nth URL is unavailable), --interval ms, --dir path,
+ * --adaptive (see {@link ConcurrencyController}).
+ * fake.* system properties are passed to the simulator, see {@link FakeDownloader}.
+ * With --server the media is fetched from {@link ThrottlingServer} started in process,
+ * its options (--host-rate etc.) are accepted too, e.g. adaptive limits against a
+ * rate limiting host:
+ * <pre>
+ * -Dfake.size=20971520 -Dbench.args="--jobs 60 --hosts 2 --parallel 16 --per-host 8 --adaptive --server --max-conn 5"
+ * </pre>
+ * With --sse N the queue is also served by {@link HttpApiServer} to N server-sent events
+ * watchers, some of them slow readers, see {@link SseWatchers}:
+ * <pre>
+ * -Dbench.args="--jobs 200 --parallel 50 --server --sse 20 --sse-slow 6 --sse-slow-rate 0"
+ * </pre>
+ * Compare process supervision threads with -Dytdl.virtual_threads=true on Java 21+,
+ * see {@link ProcessRuntime}.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class LoadHarness {
+
+    private static final long EDT_PROBE_INTERVAL_MS = 10;
+
+    private int jobsCount = 200;
+    private int parallel = 50;
+    private int perHost = -1;
+    private int hosts = 4;
+    private int batchSize = 1;
+    private boolean twoPhase = true;
+    private int failEvery = 0;
+    private long interval = 1000;
+    private Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "ytdl-load");
+    private boolean adaptive = false;
+    private boolean serverEnabled = false;
+    private final ThrottlingServer server = new ThrottlingServer();
+    private final SseWatchers sse = new SseWatchers();
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong edtDelaySum = new AtomicLong();
+    private final AtomicLong edtDelayMax = new AtomicLong();
+    private final AtomicLong edtProbes = new AtomicLong();
+    private final AtomicInteger finished = new AtomicInteger();
+    private final Object idleLock = new Object();
+    private long[] edtHistogram = new long[0];
+    private int edtCount = 0;
+
+    public static void main(String[] args) throws Exception{
+        LoadHarness harness = new LoadHarness();
+        harness.parseArgs(args);
+        System.exit(harness.run() ? 0 : 1);
+    }
+
+    protected void parseArgs(String[] args){
+        for(int i=0; i<args.length; i++){
+            String arg = args[i];
+            if (arg.equals("--single-phase")){
+                twoPhase = false;
+                continue;
+            }
+            if (arg.equals("--adaptive")){
+                adaptive = true;
+                continue;
+            }
+            if (arg.equals("--server")){
+                serverEnabled = true;
+                continue;
+            }
+            if (i+1>=args.length) throw new IllegalArgumentException("missing value: " + arg);
+            String value = args[++i];
+            if (server.option(arg, value)) continue;
+            if (sse.option(arg, value)) continue;
+            switch(arg){
+                case "--jobs": jobsCount = Integer.parseInt(value); break;
+                case "--parallel": parallel = Integer.parseInt(value); break;
+                case "--per-host": perHost = Integer.parseInt(value); break;
+                case "--hosts": hosts = Math.max(1, Integer.parseInt(value)); break;
+                case "--batch": batchSize = Integer.parseInt(value); break;
+                case "--fail-every": failEvery = Integer.parseInt(value); break;
+                case "--interval": interval = Long.parseLong(value); break;
+                case "--dir": dir = Paths.get(value); break;
+                default: throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+    }
+
+    /**
+     * @return true if all jobs except the failing ones (--fail-every) are done
+     */
+    public boolean run() throws IOException, InterruptedException{
+        Map<String,String> fakeProperties = fakeProperties();
+        if (serverEnabled){
+            server.start(0);
+            fakeProperties.put("fake.server", server.getUrl());
+        }
+        Path exe = FakeDownloader.install(dir.resolve("bin"), fakeProperties);
+        VideoDownloader.DOWNLOADER_LIST = Arrays.copyOf(VideoDownloader.DOWNLOADER_LIST, VideoDownloader.DOWNLOADER_LIST.length+1);
+        VideoDownloader.DOWNLOADER_LIST[VideoDownloader.DOWNLOADER_LIST.length-1] = exe.toString();
+
+        Path outDir = Files.createDirectories(dir.resolve("out-" + System.currentTimeMillis()));
+        DownloadQueue queue = new DownloadQueue(parallel, perHost>0 ? perHost : parallel);
+        queue.setBatchSize(batchSize);
+        queue.setAdaptiveConcurrency(adaptive);
+        queue.setTwoPhase(twoPhase);
+        if (twoPhase) queue.setMetadataCache(new MetadataCache(outDir.resolve(MetadataCache.DEFAULT_DIR_NAME)));
+
+        UiUpdateDispatcher ui = new UiUpdateDispatcher();
+        ui.onMessages(list -> {});
+        queue.onJobProgress((job, p) -> {
+            lines.incrementAndGet();
+            ui.postProgress(job, p);
+        });
+        queue.onJobMessage((job, line) -> {
+            lines.incrementAndGet();
+            ui.postMessage(line);
+        });
+        queue.onJobStateChange(job -> {
+            ui.postJobChange(job);
+            if (job.getState().isActive()) return;
+            finished.incrementAndGet();
+            synchronized(idleLock){
+                idleLock.notifyAll();
+            }
+        });
+        queue.getEvents().subscribe(new CountingSubscriber());
+        ui.start();
+        if (sse.isEnabled()) sse.start(queue, outDir);
+
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "load-harness-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleAtFixedRate(this::probeEdt, EDT_PROBE_INTERVAL_MS, EDT_PROBE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        System.out.println(String.format("%d jobs, %d parallel, %d hosts, %s process threads, downloader %s, output %s",
+            jobsCount, parallel, hosts, ProcessRuntime.getDefault().isVirtual() ? "virtual" : "platform", exe, outDir));
+        if (serverEnabled) System.out.println("server " + server.getUrl() + ", " + server.describe());
+        if (sse.isEnabled()) System.out.println(sse.describe());
+        System.out.println(String.format("%8s %7s %7s %7s %6s %8s %7s %7s %14s %9s %9s %5s %6s",
+            "time,s", "running", "pending", "done", "cpu,%", "heap,MB", "rss,MB", "threads", "edt avg/max,ms", "ev/s", "lines/s",
+            "limit", "MB/s"));
+
+        long start = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        for(int i=1; i<=jobsCount; i++){
+            VideoDownloaderCommand vdc = new VideoDownloaderCommand(url(i), outDir.toString());
+            vdc.setDownloaderExe(exe.toString());
+            queue.submit(vdc);
+        }
+
+        Sample previous = new Sample(start);
+        int peakThreads = 0;
+        long peakHeap = 0;
+        long peakRss = 0;
+        while(queue.isBusy()){
+            synchronized(idleLock){
+                idleLock.wait(interval);
+            }
+            Sample sample = new Sample(System.nanoTime());
+            if (sample.time - previous.time < interval*1_000_000/2 && queue.isBusy()) continue;
+            peakThreads = Math.max(peakThreads, sample.threads);
+            peakHeap = Math.max(peakHeap, sample.heap);
+            peakRss = Math.max(peakRss, sample.rss);
+            print(queue, start, previous, sample);
+            previous = sample;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        System.out.println();
+        if (sse.isEnabled()) sse.stop();
+        timer.shutdownNow();
+        ui.stop();
+        queue.shutdown();
+
+        Map<DownloadJobState,Integer> states = new LinkedHashMap<>();
+        for(DownloadJob job: queue.getJobs()) states.merge(job.getState(), 1, Integer::sum);
+
+        System.out.println(String.format("wall time %.1f s, %.2f jobs/s, states %s",
+            elapsed/1e9, jobsCount / (elapsed/1e9), states));
+        System.out.println(String.format("peak threads %d, peak heap %.1f MB, peak rss %.1f MB, total cpu %.1f s",
+            peakThreads, peakHeap/1048576.0, peakRss/1048576.0, cpuTime()/1e9));
+        System.out.println(String.format("events %d (%.0f/s), lines %d (%.0f/s), dropped %d",
+            events.get(), events.get() / (elapsed/1e9), lines.get(), lines.get() / (elapsed/1e9), queue.getEvents().getDropped()));
+        System.out.println(String.format("edt latency p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+            edtPercentile(0.5), edtPercentile(0.99), edtPercentile(1)));
+        ConcurrencyController controller = queue.getConcurrencyController();
+        if (controller!=null){
+            System.out.println(String.format("adaptive concurrency: %d increases, %d decreases, host limits %s",
+                controller.getIncreaseCount(), controller.getDecreaseCount(), controller.getHostLimits()));
+            controller.getDecisions().forEach(d -> System.out.println(String.format("  %8.1f %s",
+                (d.getTime() - startMillis)/1000.0, d)));
+        }
+        if (serverEnabled){
+            System.out.println(String.format("server: %d requests rejected with 429, bytes per host %s",
+                server.getRejected(), server.getBytes()));
+            server.stop();
+        }
+
+        int expectedFailures = failEvery>0 ? jobsCount/failEvery : 0;
+        return states.getOrDefault(DownloadJobState.DONE, 0) == jobsCount - expectedFailures;
+    }
+
+    private Map<String,String> fakeProperties(){
+        Map<String,String> map = new LinkedHashMap<>();
+        System.getProperties().stringPropertyNames().stream()
+            .filter(key -> key.startsWith("fake."))
+            .sorted()
+            .forEach(key -> map.put(key, System.getProperty(key)));
+        return map;
+    }
+
+    private String url(int i){
+        String id = (failEvery>0 && i%failEvery==0) ? "unavailable" + i : "job" + i;
+        return "https://www.host" + (i % hosts) + ".test/watch?v=" + id;
+    }
+
+    private void print(DownloadQueue queue, long start, Sample previous, Sample sample){
+        double seconds = (sample.time - previous.time) / 1e9;
+        double cpu = 100.0 * (sample.cpu - previous.cpu) / (sample.time - previous.time) / Runtime.getRuntime().availableProcessors();
+        long probes = sample.edtProbes - previous.edtProbes;
+        double edtAvg = probes>0 ? (sample.edtDelaySum - previous.edtDelaySum) / 1e6 / probes : 0;
+        double edtMax = edtDelayMax.getAndSet(0) / 1e6;
+
+        ConcurrencyController controller = queue.getConcurrencyController();
+        int limit = controller!=null ? controller.getLimit(queue.getMaxParallel()) : queue.getMaxParallel();
+
+        System.out.println(String.format("%8.1f %7d %7d %7d %6.1f %8.1f %7.1f %7d %6.2f/%-7.2f %9.0f %9.0f %5d %6.2f",
+            (sample.time - start)/1e9, queue.getRunningCount(), queue.getPendingCount(), finished.get(),
+            cpu, sample.heap/1048576.0, sample.rss/1048576.0, sample.threads, edtAvg, edtMax,
+            (sample.events - previous.events) / seconds, (sample.lines - previous.lines) / seconds,
+            limit, queue.getThroughput()/1048576.0));
+    }
+
+    /**
+     * Post timestamped no-op to EDT, the delay shows how busy the dispatch thread is.
+     */
+    private void probeEdt(){
+        long posted = System.nanoTime();
+        EventQueue.invokeLater(() -> {
+            long delay = System.nanoTime() - posted;
+            edtDelaySum.addAndGet(delay);
+            edtDelayMax.accumulateAndGet(delay, Math::max);
+            edtProbes.incrementAndGet();
+            recordEdtDelay(delay);
+        });
+    }
+
+    /**
+     * Called on EDT only.
+     */
+    private void recordEdtDelay(long delay){
+        if (edtCount==edtHistogram.length) edtHistogram = Arrays.copyOf(edtHistogram, Math.max(1024, edtCount*2));
+        edtHistogram[edtCount++] = delay;
+    }
+
+    private double edtPercentile(double p){
+        long[][] sorted = new long[1][];
+        try{
+            EventQueue.invokeAndWait(() -> sorted[0] = Arrays.copyOf(edtHistogram, edtCount));
+        }catch(Exception ex){
+            return -1;
+        }
+        if (sorted[0].length==0) return 0;
+        Arrays.sort(sorted[0]);
+        int index = (int)Math.min(sorted[0].length-1, Math.ceil(p*sorted[0].length) - 1);
+        return sorted[0][Math.max(0, index)] / 1e6;
+    }
+
+    private static long cpuTime(){
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean
+            ? ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime()
+            : -1;
+    }
+
+    /**
+     * @return resident set size in bytes from /proc, -1 if not available
+     */
+    private static long rss(){
+        try{
+            for(String line: Files.readAllLines(Paths.get("/proc/self/status"))){
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+            }
+        }catch(IOException | RuntimeException ex){
+            // not Linux
+        }
+        return -1;
+    }
+
+
+    private class Sample{
+        final long time;
+        final long cpu = cpuTime();
+        final long heap = memory.getHeapMemoryUsage().getUsed();
+        final long rss = rss();
+        final int threads = LoadHarness.this.threads.getThreadCount();
+        final long events = LoadHarness.this.events.get();
+        final long lines = LoadHarness.this.lines.get();
+        final long edtDelaySum = LoadHarness.this.edtDelaySum.get();
+        final long edtProbes = LoadHarness.this.edtProbes.get();
+
+        Sample(long time){
+            this.time = time;
+        }
+    }
+
+    private class CountingSubscriber implements Flow.Subscriber<DownloadEvent>{
+        private Flow.Subscription subscription;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(DownloadEvent item) {
+            events.incrementAndGet();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            subscription.cancel();
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+}
@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cyber.bench;
+
+import com.cyber.util.ProcessRuntime;
+import com.cyber.util.RunnableProcess;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Output pump of many live processes: {@link RunnableProcess} supervision of
+ * child JVMs (or POSIX shells with --shell, cheap enough to run a thousand) which
+ * stay quiet for a while, then print timestamped lines. Measures
+ * <ul>
+ * <li>idle cpu - JVM process CPU while all children are alive and silent</li>
+ * <li>threads, os threads, rss - JVM platform threads, all native threads of the
+ * process (carriers of virtual threads included) and resident set size (Linux only)
+ * in the idle window</li>
+ * <li>line latency - from the child's println to the output handler, p50/p99/max</li>
+ * </ul>
+ * Run with:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.cyber.bench.ProcessPumpHarness -Dbench.args="--processes 50"
+ * </pre>
+ * Options: --processes N, --idle ms, --lines N (per process), --line-interval ms,
+ * --shell (sh child, needs GNU date).
+ * Compare with -Dytdl.virtual_threads=true on Java 21+, see {@link ProcessRuntime}.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class ProcessPumpHarness {
+
+    private static final String CHILD = "--child";
+    private static final String READY = "ready";
+
+    private int processes = 50;
+    private long idle = 10000;
+    private int lines = 100;
+    private long lineInterval = 50;
+    private boolean shell = false;
+
+    private final List<Long> latencies = new ArrayList<>();
+    private final AtomicLong firstReady = new AtomicLong();
+    private final AtomicLong badLines = new AtomicLong();
+
+    public static void main(String[] args) throws Exception{
+        if (args.length>0 && args[0].equals(CHILD)){
+            child(Long.parseLong(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+            return;
+        }
+        ProcessPumpHarness harness = new ProcessPumpHarness();
+        harness.parseArgs(args);
+        harness.run();
+        System.exit(0);
+    }
+
+    /**
+     * Child process: report start, stay quiet, then print epoch microseconds per line.
+     */
+    private static void child(long idle, int lines, long lineInterval) throws InterruptedException{
+        System.out.println(READY);
+        System.out.flush();
+        Thread.sleep(idle);
+        for(int i=0; i<lines; i++){
+            System.out.println(epochMicros());
+            System.out.flush();
+            Thread.sleep(lineInterval);
+        }
+    }
+
+    protected void parseArgs(String[] args){
+        for(int i=0; i<args.length; i++){
+            String arg = args[i];
+            if (arg.equals("--shell")){
+                shell = true;
+                continue;
+            }
+            if (i+1>=args.length) throw new IllegalArgumentException("missing value: " + arg);
+            String value = args[++i];
+            switch(arg){
+                case "--processes": processes = Integer.parseInt(value); break;
+                case "--idle": idle = Long.parseLong(value); break;
+                case "--lines": lines = Integer.parseInt(value); break;
+                case "--line-interval": lineInterval = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+    }
+
+    public void run() throws InterruptedException{
+        List<String> command = shell ? shellCommand() : List.of(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-XX:+UseSerialGC", "-XX:TieredStopAtLevel=1", "-Xss256k", "-Xmx16m", "-Xshare:auto",
+            "-cp", System.getProperty("java.class.path"),
+            ProcessPumpHarness.class.getName(), CHILD,
+            String.valueOf(idle), String.valueOf(lines), String.valueOf(lineInterval));
+
+        System.out.println(String.format("%d %s processes, java %s, %s process threads, idle %d ms, %d lines per %d ms",
+            processes, shell ? "sh" : "java", System.getProperty("java.version"),
+            ProcessRuntime.getDefault().isVirtual() ? "virtual" : "platform", idle, lines, lineInterval));
+
+        CountDownLatch allReady = new CountDownLatch(processes);
+        CountDownLatch exited = new CountDownLatch(processes);
+        for(int i=0; i<processes; i++){
+            RunnableProcess proc = new RunnableProcess(command)
+                .onOutputBytes((buf, offset, length) -> onLine(buf, offset, length, allReady))
+                .onExit(p -> exited.countDown());
+            ProcessRuntime.getDefault().execute(proc);
+        }
+
+        if (!allReady.await(idle + 60000, TimeUnit.MILLISECONDS)) throw new IllegalStateException("children didn't start");
+        // measured while every child sleeps: from the last start to the first wake up
+        long windowEnd = firstReady.get() + TimeUnit.MILLISECONDS.toNanos(idle) - TimeUnit.MILLISECONDS.toNanos(200);
+        long start = System.nanoTime();
+        long cpuStart = cpuTime();
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long osThreads = procStatus("Threads:");
+        long rss = procStatus("VmRSS:");
+        if (windowEnd - start < TimeUnit.MILLISECONDS.toNanos(1000)){
+            System.out.println("idle window is too short, increase --idle");
+        }else{
+            TimeUnit.NANOSECONDS.sleep(windowEnd - start);
+            long elapsed = System.nanoTime() - start;
+            long cpu = cpuTime() - cpuStart;
+            System.out.println(String.format("idle: %.1f s, cpu %.2f ms/s (%.3f%% of one core), threads %d, os threads %d, rss %.1f MB",
+                elapsed/1e9, cpu/1e6 / (elapsed/1e9), 100.0 * cpu / elapsed, threads, osThreads, rss/1024.0));
+        }
+
+        exited.await();
+        long[] sorted;
+        synchronized(latencies){
+            sorted = latencies.stream().mapToLong(Long::longValue).toArray();
+        }
+        Arrays.sort(sorted);
+        System.out.println(String.format("lines %d (bad %d), latency p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+            sorted.length, badLines.get(), percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 1)));
+    }
+
+    /**
+     * Child shell: the same protocol as the child JVM, a line stamp costs a date process.
+     */
+    private List<String> shellCommand(){
+        String script = "echo " + READY + "; sleep " + idle/1000.0
+            + "; i=0; while [ $i -lt " + lines + " ]; do date +%s%6N; sleep " + lineInterval/1000.0
+            + "; i=$((i+1)); done";
+        return List.of("sh", "-c", script);
+    }
+
+    /**
+     * @return value of /proc/self/status field (kB for sizes), -1 if not available
+     */
+    private static long procStatus(String field){
+        try{
+            for(String line: Files.readAllLines(Paths.get("/proc/self/status"))){
+                if (line.startsWith(field)) return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        }catch(IOException | RuntimeException ex){
+            // not Linux
+        }
+        return -1;
+    }
+
+    private void onLine(byte[] buf, int offset, int length, CountDownLatch allReady){
+        long now = epochMicros();
+        if (length==READY.length() && buf[offset]=='r'){
+            firstReady.compareAndSet(0, System.nanoTime());
+            allReady.countDown();
+            return;
+        }
+        long stamp = 0;
+        for(int i=offset; i<offset+length; i++){
+            byte b = buf[i];
+            if (b<'0' || b>'9'){
+                badLines.incrementAndGet();
+                return;
+            }
+            stamp = stamp*10 + (b-'0');
+        }
+        synchronized(latencies){
+            latencies.add(now - stamp);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p){
+        if (sorted.length==0) return 0;
+        int index = (int)Math.min(sorted.length-1, Math.ceil(p*sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e3;
+    }
+
+    private static long epochMicros(){
+        Instant now = Instant.now();
+        return now.getEpochSecond()*1_000_000 + now.getNano()/1000;
+    }
+
+    private static long cpuTime(){
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean
+            ? ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime()
+            : -1;
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cyber.bench;
+
+import com.cyber.ytdl.DownloadQueue;
+import com.cyber.ytdl.VideoDownloaderCommand;
+import com.cyber.ytdl.api.HttpApiServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Server-sent events load for {@link LoadHarness}: starts {@link HttpApiServer} on the
+ * harness queue and connects watchers to /api/events. Fast watchers read everything,
+ * slow ones have a small receive buffer and read at a limited rate (or stop reading
+ * after the response headers with rate 0), so the server has to skip batches, resync
+ * and drop them. Reports watchers dropped by the server and per group: delivery
+ * latency (event time to receipt of its batch), batches, events, resyncs and
+ * disconnects seen by the client (a slow reader may not reach the end of its stream
+ * before the run ends).
+ * <p>
+ * Options: --sse N (watchers, 0 is off), --sse-slow N (of them slow),
+ * --sse-slow-rate bytes/s.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class SseWatchers {
+
+    private static final int SLOW_RECEIVE_BUFFER = 4096;
+    private static final int SLOW_READ_SIZE = 512;
+    private static final int DRAIN_TIMEOUT_MS = 3000;
+    private static final byte[] LAST_CHUNK = "\r\n0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern TIME_PATTERN = Pattern.compile("\"time\":(\\d+)");
+
+    private int watchers = 0;
+    private int slow = 0;
+    private int slowRate = 0;
+
+    private HttpApiServer server;
+    private final List<Client> clients = new ArrayList<>();
+    private volatile boolean stopping = false;
+
+    /**
+     * @param name option name: --sse, --sse-slow, --sse-slow-rate
+     * @param value
+     * @return true if the option is known
+     */
+    public boolean option(String name, String value){
+        switch(name){
+            case "--sse": watchers = Integer.parseInt(value); return true;
+            case "--sse-slow": slow = Integer.parseInt(value); return true;
+            case "--sse-slow-rate": slowRate = Integer.parseInt(value); return true;
+            default: return false;
+        }
+    }
+
+    public boolean isEnabled(){
+        return watchers>0;
+    }
+
+    public String describe(){
+        return String.format("sse %d watchers (%d slow at %s), server %s", watchers, Math.min(slow, watchers),
+            slowRate>0 ? slowRate + " B/s" : "no reading", server!=null ? server.getAddress() : "-");
+    }
+
+    /**
+     * Start the API server on the queue and connect watchers.
+     */
+    public void start(DownloadQueue queue, Path outDir) throws IOException{
+        server = new HttpApiServer(queue, new VideoDownloaderCommand("", outDir.toString()),
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        server.start();
+        for(int i=0; i<watchers; i++){
+            Client client = new Client(i<slow);
+            clients.add(client);
+            Thread t = new Thread(client, "sse-watcher-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+    }
+
+    /**
+     * Check which watchers are still connected, print the summary and stop the server.
+     */
+    public void stop(){
+        stopping = true;
+        for(Client client: clients) client.drain();
+        int accepted = 0;
+        for(Client client: clients){
+            synchronized(client){
+                if (!client.rejected) accepted++;
+            }
+        }
+        int connected = server.getWatcherCount();
+        System.out.println(String.format("sse: %d watchers connected, %d dropped by server", connected, accepted - connected));
+        print("fast", false);
+        print("slow", true);
+        server.stop();
+        clients.forEach(Client::close);
+    }
+
+    private void print(String name, boolean slowGroup){
+        int count = 0;
+        long batches = 0;
+        long events = 0;
+        long resyncs = 0;
+        int disconnects = 0;
+        int rejected = 0;
+        Latencies latencies = new Latencies();
+        for(Client client: clients){
+            if (client.slow!=slowGroup) continue;
+            count++;
+            synchronized(client){
+                batches += client.batches;
+                events += client.events;
+                resyncs += client.resyncs;
+                if (client.disconnected) disconnects++;
+                if (client.rejected) rejected++;
+                latencies.addAll(client.latencies);
+            }
+        }
+        if (count==0) return;
+        System.out.println(String.format("sse %s: %d watchers, %d batches, %d events, latency p50 %d ms, p99 %d ms, max %d ms, "
+            + "%d resyncs, %d disconnected, %d rejected",
+            name, count, batches, events, latencies.percentile(0.5), latencies.percentile(0.99), latencies.percentile(1),
+            resyncs, disconnects, rejected));
+    }
+
+
+    /**
+     * Growing array of latencies, ms.
+     */
+    private static class Latencies{
+        long[] values = new long[0];
+        int count = 0;
+
+        void add(long value){
+            if (count==values.length) values = Arrays.copyOf(values, Math.max(1024, count*2));
+            values[count++] = value;
+        }
+
+        void addAll(Latencies other){
+            for(int i=0; i<other.count; i++) add(other.values[i]);
+        }
+
+        long percentile(double p){
+            if (count==0) return 0;
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            int index = (int)Math.min(count-1, Math.ceil(p*count) - 1);
+            return sorted[Math.max(0, index)];
+        }
+    }
+
+    /**
+     * Raw socket client with chunked transfer decoding, so the receive buffer and
+     * the read rate can be controlled.
+     */
+    private class Client implements Runnable{
+        final boolean slow;
+        final Latencies latencies = new Latencies();
+        long batches = 0;
+        long events = 0;
+        long resyncs = 0;
+        boolean disconnected = false;
+        boolean rejected = false;
+
+        private Socket socket;
+        private InputStream in;
+        private final StringBuilder text = new StringBuilder();
+        private String event = "";
+        private final byte[] buffer = new byte[8192];
+        private int bufferPos = 0;
+        private int bufferLength = 0;
+        private long received = 0;
+        private long readStart;
+
+        Client(boolean slow){
+            this.slow = slow;
+        }
+
+        @Override
+        public void run(){
+            try{
+                socket = new Socket();
+                if (slow) socket.setReceiveBufferSize(SLOW_RECEIVE_BUFFER);
+                socket.connect(server.getAddress());
+                OutputStream out = socket.getOutputStream();
+                out.write(("GET /api/events HTTP/1.1\r\nHost: 127.0.0.1:" + server.getAddress().getPort() + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                in = socket.getInputStream();
+
+                String status = readLine();
+                if (!status.contains(" 200 ")){
+                    synchronized(this){
+                        rejected = true;
+                    }
+                    return;
+                }
+                while(!readLine().isEmpty()){
+                    // headers
+                }
+                if (slow && slowRate<=0) return;
+
+                readStart = System.nanoTime();
+                while(!stopping){
+                    int size = Integer.parseInt(readLine().trim(), 16);
+                    if (size==0) throw new IOException("end of stream");
+                    byte[] chunk = readBytes(size);
+                    readLine();
+                    handle(new String(chunk, StandardCharsets.UTF_8));
+                }
+            }catch(IOException | RuntimeException ex){
+                if (stopping) return;
+                synchronized(this){
+                    disconnected = true;
+                }
+            }
+        }
+
+        /**
+         * Called after stop for watchers which don't read: the pending data is read,
+         * a dropped watcher gets the end of the chunked stream or the connection is closed.
+         */
+        void drain(){
+            if (!slow || slowRate>0 || socket==null || in==null) return;
+            byte[] tail = new byte[0];
+            try{
+                socket.setSoTimeout(DRAIN_TIMEOUT_MS);
+                byte[] buf = new byte[65536];
+                int n;
+                while((n = in.read(buf)) >= 0){
+                    byte[] last = new byte[Math.min(LAST_CHUNK.length, tail.length + n)];
+                    byte[] joined = Arrays.copyOf(tail, tail.length + n);
+                    System.arraycopy(buf, 0, joined, tail.length, n);
+                    System.arraycopy(joined, joined.length - last.length, last, 0, last.length);
+                    tail = last;
+                }
+            }catch(SocketTimeoutException ex){
+                // no more data
+                if (!Arrays.equals(tail, LAST_CHUNK)) return;
+            }catch(IOException ex){
+                // connection closed
+            }
+            synchronized(this){
+                disconnected = true;
+            }
+        }
+
+        void close(){
+            try{
+                if (socket!=null) socket.close();
+            }catch(IOException ex){
+                // ignore
+            }
+        }
+
+        private void handle(String data){
+            text.append(data);
+            int end;
+            while((end = text.indexOf("\n")) >= 0){
+                String line = text.substring(0, end);
+                text.delete(0, end+1);
+                if (line.startsWith("event: ")){
+                    event = line.substring("event: ".length());
+                }else if (line.startsWith("data: ")){
+                    onEvent(event, line);
+                }
+            }
+        }
+
+        private void onEvent(String name, String line){
+            long now = System.currentTimeMillis();
+            synchronized(this){
+                if (name.equals("resync")){
+                    resyncs++;
+                }else if (name.equals("batch")){
+                    batches++;
+                    Matcher m = TIME_PATTERN.matcher(line);
+                    while(m.find()){
+                        events++;
+                        latencies.add(now - Long.parseLong(m.group(1)));
+                    }
+                }
+            }
+        }
+
+        private String readLine() throws IOException{
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while((b = read()) != '\n'){
+                if (b<0) throw new IOException("end of stream");
+                if (b!='\r') line.write(b);
+            }
+            return line.toString(StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes(int size) throws IOException{
+            byte[] data = new byte[size];
+            for(int i=0; i<size; i++){
+                int b = read();
+                if (b<0) throw new IOException("end of stream");
+                data[i] = (byte)b;
+            }
+            return data;
+        }
+
+        private int read() throws IOException{
+            if (bufferPos==bufferLength){
+                throttle();
+                bufferLength = in.read(buffer, 0, slow ? SLOW_READ_SIZE : buffer.length);
+                bufferPos = 0;
+                if (bufferLength<=0) return -1;
+                received += bufferLength;
+            }
+            return buffer[bufferPos++] & 0xff;
+        }
+
+        /**
+         * Slow watcher reads no faster than the rate.
+         */
+        private void throttle() throws IOException{
+            if (!slow || readStart==0) return;
+            long due = readStart + (long)(received*1e9/slowRate);
+            long wait = due - System.nanoTime();
+            if (wait<=0) return;
+            try{
+                Thread.sleep(wait/1_000_000, (int)(wait%1_000_000));
+            }catch(InterruptedException ex){
+                throw new IOException(ex);
+            }
+        }
+    }
+
+}
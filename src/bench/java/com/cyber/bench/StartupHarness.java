@@ -0,0 +1,248 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cyber.bench;
+
+import com.cyber.util.ApplicationProperties;
+import com.cyber.util.SingleInstance;
+import com.cyber.ytdl.cli.HeadlessApp;
+import com.cyber.ytdl.gui.MainFrame;
+import java.awt.EventQueue;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.swing.UIManager;
+
+/**
+ * Cold start of the application entry paths, every run in a new JVM:
+ * <ul>
+ * <li>cli - {@link HeadlessApp} with its queue ready (headless, no AWT)</li>
+ * <li>gui - {@link MainFrame} shown the same way as gui.Main does (needs a display)</li>
+ * <li>forward - gui.Main launched with a URL while this JVM is the running instance
+ * ({@link SingleInstance}), launch-to-enqueue time is taken when the forwarded URL
+ * reaches EDT, where the instance submits it</li>
+ * </ul>
+ * Prints median and max of launch-to-ready wall time, JVM uptime at ready, RSS and
+ * peak RSS (Linux only) and loaded classes count, for forward the launcher exit time.
+ * Run with:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.cyber.bench.StartupHarness -Dbench.args="--runs 10"
+ * </pre>
+ * Options: --runs N, --scenario cli|gui|forward (default all), --dir path.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class StartupHarness {
+
+    private static final String PROBE = "--probe";
+    private static final String READY = "ready";
+    private static final String UNAVAILABLE = "unavailable";
+    private static final String INSTANCE_DIR_NAME = "ytdl-gui.instance";
+    private static final long FORWARD_TIMEOUT_SEC = 60;
+
+    private int runs = 5;
+    private List<String> scenarios = List.of("cli", "gui", "forward");
+    private Path dir = Paths.get(System.getProperty("java.io.tmpdir"), "ytdl-startup");
+
+    public static void main(String[] args) throws Exception{
+        if (args.length>0 && args[0].equals(PROBE)){
+            probe(args[1], Paths.get(args[2]));
+            return;
+        }
+        StartupHarness harness = new StartupHarness();
+        harness.parseArgs(args);
+        harness.run();
+    }
+
+    /**
+     * Child JVM: start the entry path, report and halt.
+     */
+    private static void probe(String scenario, Path dir) throws Exception{
+        ApplicationProperties properties = new ApplicationProperties(dir.resolve("app.properties").toString());
+        try{
+            if (scenario.equals("cli")){
+                System.setProperty("java.awt.headless", "true");
+                new HeadlessApp(properties).getQueue();
+            }else{
+                UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
+                MainFrame frame = new MainFrame(properties);
+                frame.showAtCenter();
+                // the frame is painted after pending EDT tasks
+                EventQueue.invokeAndWait(() -> {});
+            }
+        }catch(Exception | Error ex){
+            System.out.println(UNAVAILABLE + " " + ex.toString().replace('\n', ' '));
+            System.out.flush();
+            Runtime.getRuntime().halt(0);
+        }
+        System.out.println(String.join(" ", READY,
+            String.valueOf(ManagementFactory.getRuntimeMXBean().getUptime()),
+            String.valueOf(procStatus("VmRSS:")),
+            String.valueOf(procStatus("VmHWM:")),
+            String.valueOf(ManagementFactory.getClassLoadingMXBean().getLoadedClassCount())));
+        System.out.flush();
+        Runtime.getRuntime().halt(0);
+    }
+
+    protected void parseArgs(String[] args){
+        for(int i=0; i<args.length; i++){
+            String arg = args[i];
+            if (i+1>=args.length) throw new IllegalArgumentException("missing value: " + arg);
+            String value = args[++i];
+            switch(arg){
+                case "--runs": runs = Integer.parseInt(value); break;
+                case "--scenario": scenarios = List.of(value); break;
+                case "--dir": dir = Paths.get(value); break;
+                default: throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+    }
+
+    public void run() throws IOException, InterruptedException{
+        Files.createDirectories(dir);
+        System.out.println(String.format("%d runs, java %s, %s", runs, System.getProperty("java.version"), dir));
+        System.out.println(String.format("%-8s %16s %16s %16s %16s %8s",
+            "scenario", "wall med/max,ms", "uptime med,ms", "rss med,MB", "peak rss med,MB", "classes"));
+        for(String scenario: scenarios){
+            if (scenario.equals("forward")){
+                measureForward();
+            }else{
+                measure(scenario);
+            }
+        }
+    }
+
+    private void measure(String scenario) throws IOException, InterruptedException{
+        long[] wall = new long[runs];
+        long[] uptime = new long[runs];
+        long[] rss = new long[runs];
+        long[] peakRss = new long[runs];
+        long[] classes = new long[runs];
+
+        for(int i=0; i<runs; i++){
+            long start = System.nanoTime();
+            Process proc = new ProcessBuilder(javaCommand(StartupHarness.class, PROBE, scenario, dir.toString()))
+                .redirectErrorStream(true)
+                .start();
+            String result = null;
+            try(BufferedReader in = new BufferedReader(new InputStreamReader(proc.getInputStream(), StandardCharsets.UTF_8))){
+                String line;
+                while((line=in.readLine())!=null){
+                    if (line.startsWith(READY) || line.startsWith(UNAVAILABLE)){
+                        result = line;
+                        break;
+                    }
+                }
+            }
+            wall[i] = (System.nanoTime() - start) / 1_000_000;
+            proc.waitFor();
+
+            if (result==null || result.startsWith(UNAVAILABLE)){
+                System.out.println(String.format("%-8s not measured: %s", scenario, result!=null ? result : "no ready line"));
+                return;
+            }
+            String[] parts = result.split(" ");
+            uptime[i] = Long.parseLong(parts[1]);
+            rss[i] = Long.parseLong(parts[2]);
+            peakRss[i] = Long.parseLong(parts[3]);
+            classes[i] = Long.parseLong(parts[4]);
+        }
+
+        System.out.println(String.format("%-8s %16s %16d %16.1f %16.1f %8d",
+            scenario, median(wall) + "/" + Arrays.stream(wall).max().getAsLong(), median(uptime),
+            median(rss)/1048576.0, median(peakRss)/1048576.0, median(classes)));
+    }
+
+    private void measureForward() throws IOException, InterruptedException{
+        long[] wall = new long[runs];
+        long[] exit = new long[runs];
+        BlockingQueue<Long> received = new LinkedBlockingQueue<>();
+
+        try(SingleInstance instance = new SingleInstance(dir.resolve(INSTANCE_DIR_NAME))){
+            // as gui.Main: forwarded URLs are submitted on EDT
+            instance.listen(urls -> EventQueue.invokeLater(() -> received.add(System.nanoTime())));
+            for(int i=0; i<runs; i++){
+                long start = System.nanoTime();
+                Process proc = new ProcessBuilder(javaCommand(com.cyber.ytdl.gui.Main.class, "https://www.host.test/watch?v=forward" + i))
+                    .directory(dir.toFile())
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+                Long time = received.poll(FORWARD_TIMEOUT_SEC, TimeUnit.SECONDS);
+                if (time==null){
+                    proc.destroyForcibly();
+                    System.out.println(String.format("%-8s not measured: nothing forwarded", "forward"));
+                    return;
+                }
+                wall[i] = (time - start) / 1_000_000;
+                proc.waitFor();
+                exit[i] = (System.nanoTime() - start) / 1_000_000;
+            }
+        }
+
+        System.out.println(String.format("%-8s %16s   launcher exit med %d ms",
+            "forward", median(wall) + "/" + Arrays.stream(wall).max().getAsLong(), median(exit)));
+    }
+
+    private static List<String> javaCommand(Class<?> mainClass, String...args){
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(mainClass.getName());
+        command.addAll(Arrays.asList(args));
+        return command;
+    }
+
+    private static long median(long[] values){
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length/2];
+    }
+
+    /**
+     * @return /proc/self/status value in bytes, -1 if not available
+     */
+    private static long procStatus(String key){
+        try{
+            for(String line: Files.readAllLines(Paths.get("/proc/self/status"))){
+                if (line.startsWith(key)) return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+            }
+        }catch(IOException | RuntimeException ex){
+            // not Linux
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local media server which behaves like a loaded video host: every connection is
+ * limited to a per connection rate, all connections of a host share the host rate,
+ * connections above the host limit get HTTP 429, and above the throttle level the
+ * host rate is halved. So there is an optimal number of parallel downloads per
+ * host, which adaptive concurrency should find. Used by {@link FakeDownloader}
+ * with fake.server property.
+ * <pre>
+ * GET /media/{host}/{name}?size=N   N dummy bytes, Range: bytes=from- is supported
+ * </pre>
+ * Run standalone with:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.cyber.bench.ThrottlingServer -Dbench.args="--port 8090"
+ * </pre>
+ * Options: --port N, --host-rate MB/s, --conn-rate MB/s, --max-conn N, --throttle-above N (0 is off).
+ *
+ * @author Kirill Bereznyakov
+ */
+public class ThrottlingServer {
+
+    private static final int CHUNK_SIZE = 16*1024;
+    private static final Pattern PATH_PATTERN = Pattern.compile("^/media/([^/]+)/");
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d+)-");
+
+    private double hostRate = 4 << 20;
+    private double connectionRate = 1 << 20;
+    private int maxConnections = 6;
+    private int throttleAbove = 0;
+
+    private final Map<String,Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Bandwidth shared by host connections, chunks are reserved in turn.
+     */
+    private class Host{
+        final AtomicInteger connections = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        private long next = 0;
+
+        /**
+         * @return time when the chunk may be sent
+         */
+        synchronized long reserve(int length){
+            double rate = throttleAbove>0 && connections.get()>throttleAbove ? hostRate/2 : hostRate;
+            long now = System.nanoTime();
+            long start = Math.max(now, next);
+            next = start + (long)(length*1e9/rate);
+            return start;
+        }
+    }
+
+    public static void main(String[] args) throws IOException{
+        int port = 8090;
+        ThrottlingServer server = new ThrottlingServer();
+        for(int i=0; i+1<args.length; i+=2){
+            if (args[i].equals("--port")){
+                port = Integer.parseInt(args[i+1]);
+            }else{
+                server.option(args[i], args[i+1]);
+            }
+        }
+        server.start(port);
+        System.out.println("listening on " + server.getUrl() + ", " + server.describe());
+    }
+
+    /**
+     * @param name option name: --host-rate, --conn-rate, --max-conn, --throttle-above
+     * @param value
+     * @return true if the option is known
+     */
+    public boolean option(String name, String value){
+        switch(name){
+            case "--host-rate": hostRate = Double.parseDouble(value)*1048576; return true;
+            case "--conn-rate": connectionRate = Double.parseDouble(value)*1048576; return true;
+            case "--max-conn": maxConnections = Integer.parseInt(value); return true;
+            case "--throttle-above": throttleAbove = Integer.parseInt(value); return true;
+            default: return false;
+        }
+    }
+
+    public void start(int port) throws IOException{
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "throttling-server");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/media/", this::handle);
+        server.start();
+    }
+
+    public void stop(){
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUrl(){
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public String describe(){
+        return String.format("host %.1f MB/s, connection %.1f MB/s, max %d connections, throttle above %d",
+            hostRate/1048576, connectionRate/1048576, maxConnections, throttleAbove);
+    }
+
+    /**
+     * @return requests rejected with 429
+     */
+    public long getRejected(){
+        return rejected.get();
+    }
+
+    /**
+     * @return bytes sent per host
+     */
+    public Map<String,Long> getBytes(){
+        Map<String,Long> map = new TreeMap<>();
+        hosts.forEach((host, h) -> map.put(host, h.bytes.get()));
+        return map;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException{
+        try{
+            Matcher mat = PATH_PATTERN.matcher(exchange.getRequestURI().getPath());
+            String query = exchange.getRequestURI().getQuery();
+            if (!mat.find() || query==null || !query.startsWith("size=")){
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            long size = Long.parseLong(query.substring(5));
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            Matcher rangeMat = range!=null ? RANGE_PATTERN.matcher(range) : null;
+            long from = rangeMat!=null && rangeMat.find() ? Math.min(size, Long.parseLong(rangeMat.group(1))) : 0;
+
+            Host host = hosts.computeIfAbsent(mat.group(1), h -> new Host());
+            if (host.connections.incrementAndGet()>maxConnections){
+                host.connections.decrementAndGet();
+                rejected.incrementAndGet();
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            try{
+                send(exchange, host, from, size);
+            }finally{
+                host.connections.decrementAndGet();
+            }
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }catch(IOException ex){
+            // client gone
+        }finally{
+            exchange.close();
+        }
+    }
+
+    private void send(HttpExchange exchange, Host host, long from, long size) throws IOException, InterruptedException{
+        if (from>0) exchange.getResponseHeaders().set("Content-Range", "bytes " + from + "-" + (size-1) + "/" + size);
+        exchange.sendResponseHeaders(from>0 ? 206 : 200, size>from ? size-from : -1);
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long start = System.nanoTime();
+        long sent = 0;
+        OutputStream os = exchange.getResponseBody();
+        while(from+sent<size){
+            int n = (int)Math.min(chunk.length, size-from-sent);
+            long at = Math.max(host.reserve(n), start + (long)(sent*1e9/connectionRate));
+            long wait = at - System.nanoTime();
+            if (wait>0) Thread.sleep(wait/1_000_000, (int)(wait%1_000_000));
+            os.write(chunk, 0, n);
+            sent += n;
+            host.bytes.addAndGet(n);
+        }
+        os.flush();
+    }
+
+}
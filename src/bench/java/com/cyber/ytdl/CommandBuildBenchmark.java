@@ -0,0 +1,87 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Command line building, done for every job, attempt and batch key lookup.
+ *
+ * @author Kirill Bereznyakov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CommandBuildBenchmark {
+
+    @Param({"BEST", "VIDEO_1080", "AUDIO_ONLY"})
+    public VideoDownloaderSourceFormat format;
+
+    @Param({"false", "true"})
+    public boolean compatibility;
+
+    private VideoDownloaderCommand command;
+
+    @Setup
+    public void setup(){
+        command = new VideoDownloaderCommand("https://www.youtube.com/watch?v=aqz-KE-bpKQ", "/home/user/Видео");
+        command.setSourceFormat(format);
+        command.setCompatibleFormat(compatibility);
+        command.setPlaylistAllowed(true);
+        command.setSubtitlesAllowed(true);
+        command.setProxyUrl("socks5://127.0.0.1:1080");
+    }
+
+    @Benchmark
+    public List<String> toList(){
+        return command.toList();
+    }
+
+    @Benchmark
+    public String getBatchKey(){
+        return command.getBatchKey();
+    }
+
+    @Benchmark
+    public String getFormatString(){
+        return format.getFormatString(compatibility);
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import com.cyber.bench.Corpus;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Output line handling of {@link VideoDownloader}: progress scanning, failure
+ * classification and output files collection. Score is per line.
+ *
+ * @author Kirill Bereznyakov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HandleOutputBenchmark {
+
+    /** lines replayed per invocation, corpora are cycled to this count */
+    private static final int LINES = 4096;
+
+    @Param({Corpus.PROGRESS_STORM, Corpus.TEMPLATE_PROGRESS, Corpus.PLAYLIST, Corpus.NON_ASCII})
+    public String corpus;
+
+    private byte[][] lines;
+    private VideoDownloader downloader;
+
+    @Setup
+    public void setup(Blackhole bh){
+        byte[][] source = Corpus.lines(corpus);
+        lines = new byte[LINES][];
+        for(int i=0; i<LINES; i++) lines[i] = source[i % source.length];
+
+        downloader = new VideoDownloader();
+        downloader.onMessage(bh::consume);
+        downloader.onDownloadProgress(bh::consume);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void handleOutput(){
+        for(byte[] line: lines) downloader.handleOutput(line, 0, line.length);
+    }
+
+}
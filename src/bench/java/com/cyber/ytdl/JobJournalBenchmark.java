@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.cyber.ytdl;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup recovery of {@link JobJournal}: replay, compaction and decoding of
+ * unfinished jobs. Every other submitted job is finished and the journal ends
+ * with a torn record, as after a crash.
+ *
+ * @author Kirill Bereznyakov
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class JobJournalBenchmark {
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private Path dir;
+    private Path source;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException{
+        dir = Files.createTempDirectory("journal-bench");
+        source = dir.resolve("source.journal");
+        file = dir.resolve(JobJournal.DEFAULT_FILE_NAME);
+
+        JobJournal journal = new JobJournal(source);
+        journal.recover();
+        for(int i=0; i<entries; i++){
+            VideoDownloaderCommand vdc = new VideoDownloaderCommand("https://host" + (i % 16) + ".test/watch?v=" + i, "/home/user/Videos/Загрузки");
+            journal.submitted(new DownloadJob(vdc));
+        }
+        journal.close();
+
+        // state records are appended directly, the journal would compact dead records meanwhile
+        try(Writer out = Files.newBufferedWriter(source, StandardCharsets.UTF_8, StandardOpenOption.APPEND)){
+            for(String line: Files.readAllLines(source, StandardCharsets.UTF_8)){
+                long id = Long.parseLong(line.split(" ", 3)[1]);
+                out.write("T " + id + " " + (id%2==0 ? DownloadJobState.DONE : DownloadJobState.RUNNING).name() + "\n");
+            }
+            out.write("S " + Long.MAX_VALUE + " url=https%3A%2F%2Fhost0.test%2Fwat");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void copy() throws IOException{
+        Files.copy(source, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException{
+        try(var files = Files.list(dir)){
+            files.forEach(f -> {
+                try{
+                    Files.delete(f);
+                }catch(IOException ex){
+                    throw new UncheckedIOException(ex);
+                }
+            });
+        }
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public Map<Long,VideoDownloaderCommand> recover(){
+        JobJournal journal = new JobJournal(file);
+        Map<Long,VideoDownloaderCommand> unfinished = journal.recover();
+        journal.close();
+        return unfinished;
+    }
+
+}
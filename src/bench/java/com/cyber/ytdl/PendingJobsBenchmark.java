@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scheduler operations on a large queue: the next job is taken for start and
+ * added back per operation, as when a slot is released while many jobs are queued.
+ * Half of the jobs belong to one host which is at its limit.
+ *
+ * @author Kirill Bereznyakov
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PendingJobsBenchmark {
+
+    private static final int HOSTS = 16;
+
+    @Param({"FIFO", "PRIORITY", "SHORTEST_FIRST", "FAIR_SHARE"})
+    public SchedulingPolicy policy;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private PendingJobs pending;
+    private DownloadJob other;
+
+    @Setup
+    public void setup(){
+        pending = new PendingJobs(policy);
+        for(int i=0; i<size; i++) pending.add(newJob(i));
+        other = newJob(size);
+    }
+
+    static DownloadJob newJob(int i){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int host = random.nextBoolean() ? 0 : 1 + random.nextInt(HOSTS);
+        VideoDownloaderCommand vdc = new VideoDownloaderCommand("https://host" + host + ".test/watch?v=" + i);
+        vdc.setPriority(DownloadPriority.values()[random.nextInt(DownloadPriority.values().length)]);
+        DownloadJob job = new DownloadJob(vdc);
+        job.setMetadata(new VideoMetadata(Map.of("formats", List.of(Map.of(
+            "vcodec", "avc1", "acodec", "mp4a", "height", 720, "filesize", random.nextLong(1 << 20, 1L << 32))))));
+        return job;
+    }
+
+    @Benchmark
+    public DownloadJob takeAndAdd(){
+        DownloadJob job = pending.next(host -> !host.equals("host0.test"));
+        pending.take(job);
+        pending.add(job);
+        return job;
+    }
+
+    @Benchmark
+    public boolean addAndRemove(){
+        pending.add(other);
+        return pending.remove(other);
+    }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Discrete event simulation of {@link DownloadQueue} scheduling with the real
+ * {@link PendingJobs}: jobs of lognormal size arrive as a Poisson stream from hosts
+ * of skewed popularity, every slot downloads at the same rate, host limit applies.
+ * Preempted jobs continue from their downloaded bytes after a restart delay.
+ * Prints completion time (arrival to done) statistics for each policy, then the
+ * cost of scheduler operations on large queues.
+ * Run with:
+ * <pre>
+ * mvn -Pbench compile exec:exec -Dbench.main=com.cyber.ytdl.SchedulingSimulation -Dbench.args="--jobs 20000 --load 0.95"
+ * </pre>
+ * Options: --jobs N, --slots N, --per-host N, --hosts N, --load 0..1 (offered load
+ * of all slots), --rate MB/s per slot, --restart s, --seed N.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class SchedulingSimulation {
+
+    private static final double MB = 1024*1024;
+    private static final double MEDIAN_SIZE = 100*MB;
+    private static final double SIZE_SIGMA = 1.0;
+    private static final double[] PRIORITY_SHARE = {0.3, 0.6, 0.1};
+    private static final int[] QUEUE_SIZES = {1_000, 10_000, 100_000};
+
+    private int jobsCount = 5000;
+    private int slots = 4;
+    private int perHost = 2;
+    private int hosts = 8;
+    private double load = 0.9;
+    private double rate = 5*MB;
+    private double restart = 2;
+    private long seed = 1;
+
+    private static class Spec{
+        final double arrival;
+        final double size;
+        final String url;
+        final DownloadPriority priority;
+
+        Spec(double arrival, double size, String url, DownloadPriority priority){
+            this.arrival = arrival;
+            this.size = size;
+            this.url = url;
+            this.priority = priority;
+        }
+    }
+
+    private static class Task{
+        final Spec spec;
+        final DownloadJob job;
+        double remaining;
+
+        Task(Spec spec, DownloadJob job){
+            this.spec = spec;
+            this.job = job;
+            this.remaining = spec.size;
+        }
+    }
+
+    private static class Result{
+        final double[] times;
+        final Map<DownloadPriority,double[]> byPriority = new HashMap<>();
+        final double makespan;
+        final int preemptions;
+
+        Result(List<Task> done, Map<Task,Double> finish, double makespan, int preemptions){
+            this.times = done.stream().mapToDouble(t -> finish.get(t) - t.spec.arrival).sorted().toArray();
+            for(DownloadPriority p: DownloadPriority.values()){
+                byPriority.put(p, done.stream().filter(t -> t.spec.priority==p)
+                    .mapToDouble(t -> finish.get(t) - t.spec.arrival).sorted().toArray());
+            }
+            this.makespan = makespan;
+            this.preemptions = preemptions;
+        }
+    }
+
+    public static void main(String[] args){
+        SchedulingSimulation simulation = new SchedulingSimulation();
+        simulation.parseArgs(args);
+        simulation.run();
+    }
+
+    protected void parseArgs(String[] args){
+        for(int i=0; i<args.length; i++){
+            String arg = args[i];
+            if (i+1>=args.length) throw new IllegalArgumentException("missing value: " + arg);
+            String value = args[++i];
+            switch(arg){
+                case "--jobs": jobsCount = Integer.parseInt(value); break;
+                case "--slots": slots = Integer.parseInt(value); break;
+                case "--per-host": perHost = Integer.parseInt(value); break;
+                case "--hosts": hosts = Math.max(1, Integer.parseInt(value)); break;
+                case "--load": load = Double.parseDouble(value); break;
+                case "--rate": rate = Double.parseDouble(value)*MB; break;
+                case "--restart": restart = Double.parseDouble(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("unknown option: " + arg);
+            }
+        }
+    }
+
+    public void run(){
+        List<Spec> specs = generate();
+        System.out.println(String.format("%d jobs, %d slots x %.1f MB/s, %d per host, %d hosts, load %.2f, restart %.1f s",
+            jobsCount, slots, rate/MB, perHost, hosts, load, restart));
+        System.out.println(String.format("%-9s %9s %9s %9s %9s %9s %9s %11s %8s",
+            "policy", "mean,s", "p50,s", "p95,s", "p99,s", "high,s", "low,s", "makespan,s", "preempt"));
+        for(SchedulingPolicy policy: SchedulingPolicy.values()){
+            Result r = simulate(policy, specs);
+            System.out.println(String.format("%-9s %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f %11.0f %8d",
+                policy, mean(r.times), percentile(r.times, 0.5), percentile(r.times, 0.95), percentile(r.times, 0.99),
+                mean(r.byPriority.get(DownloadPriority.HIGH)), mean(r.byPriority.get(DownloadPriority.LOW)),
+                r.makespan, r.preemptions));
+        }
+
+        System.out.println();
+        System.out.println(String.format("%-9s %9s %11s", "policy", "queued", "take+add,ns"));
+        for(SchedulingPolicy policy: SchedulingPolicy.values()){
+            for(int size: QUEUE_SIZES){
+                System.out.println(String.format("%-9s %9d %11.0f", policy, size, measureOperations(policy, size)));
+            }
+        }
+    }
+
+    private List<Spec> generate(){
+        Random random = new Random(seed);
+        double[] hostWeight = new double[hosts];
+        double weightSum = 0;
+        for(int i=0; i<hosts; i++) weightSum += hostWeight[i] = 1.0/(i+1);
+
+        double meanSize = MEDIAN_SIZE*Math.exp(SIZE_SIGMA*SIZE_SIGMA/2);
+        double arrivalRate = load*slots*rate/meanSize;
+        double time = 0;
+        List<Spec> specs = new ArrayList<>(jobsCount);
+        for(int i=0; i<jobsCount; i++){
+            time += -Math.log(1 - random.nextDouble())/arrivalRate;
+            double size = MEDIAN_SIZE*Math.exp(SIZE_SIGMA*random.nextGaussian());
+            int host = pick(random, hostWeight, weightSum);
+            double p = random.nextDouble();
+            DownloadPriority priority = p<PRIORITY_SHARE[0] ? DownloadPriority.LOW
+                : p<PRIORITY_SHARE[0]+PRIORITY_SHARE[1] ? DownloadPriority.NORMAL : DownloadPriority.HIGH;
+            specs.add(new Spec(time, size, "https://host" + host + ".test/watch?v=" + i, priority));
+        }
+        return specs;
+    }
+
+    private static int pick(Random random, double[] weights, double sum){
+        double x = random.nextDouble()*sum;
+        for(int i=0; i<weights.length-1; i++){
+            if ((x -= weights[i])<0) return i;
+        }
+        return weights.length-1;
+    }
+
+    static DownloadJob newJob(String url, DownloadPriority priority, long size){
+        VideoDownloaderCommand vdc = new VideoDownloaderCommand(url);
+        vdc.setPriority(priority);
+        DownloadJob job = new DownloadJob(vdc);
+        job.setMetadata(new VideoMetadata(Map.of("formats", List.of(Map.of(
+            "vcodec", "avc1", "acodec", "mp4a", "height", 720, "filesize", size)))));
+        return job;
+    }
+
+    private Result simulate(SchedulingPolicy policy, List<Spec> specs){
+        PendingJobs pending = new PendingJobs(policy);
+        Map<DownloadJob,Task> tasks = new IdentityHashMap<>();
+        List<Task> running = new ArrayList<>();
+        Map<String,Integer> runningPerHost = new HashMap<>();
+        List<Task> done = new ArrayList<>(specs.size());
+        Map<Task,Double> finish = new IdentityHashMap<>();
+        int preemptions = 0;
+        int arrived = 0;
+        double time = 0;
+
+        while(done.size()<specs.size()){
+            double next = arrived<specs.size() ? specs.get(arrived).arrival : Double.MAX_VALUE;
+            for(Task t: running) next = Math.min(next, time + t.remaining/rate);
+
+            for(Task t: running) t.remaining -= (next - time)*rate;
+            time = next;
+
+            for(int i=running.size()-1; i>=0; i--){
+                Task t = running.get(i);
+                if (t.remaining>1) continue;
+                running.remove(i);
+                runningPerHost.merge(t.job.getHost(), -1, Integer::sum);
+                done.add(t);
+                finish.put(t, time);
+            }
+            while(arrived<specs.size() && specs.get(arrived).arrival<=time){
+                Spec spec = specs.get(arrived++);
+                Task t = new Task(spec, newJob(spec.url, spec.priority, (long)spec.size));
+                tasks.put(t.job, t);
+                pending.add(t.job);
+            }
+
+            // same rules as DownloadQueue.dispatch()
+            while(true){
+                DownloadJob job;
+                while(running.size()<slots && (job=pending.next(host -> runningPerHost.getOrDefault(host, 0)<perHost))!=null){
+                    pending.take(job);
+                    running.add(tasks.get(job));
+                    runningPerHost.merge(job.getHost(), 1, Integer::sum);
+                }
+                if (!policy.isPreemptive() || running.size()<slots) break;
+                DownloadJob best = pending.next(host -> true);
+                Task victim = best!=null ? findVictim(best, running, runningPerHost) : null;
+                if (victim==null) break;
+                running.remove(victim);
+                runningPerHost.merge(victim.job.getHost(), -1, Integer::sum);
+                victim.remaining += restart*rate;
+                pending.addFirst(victim.job);
+                preemptions++;
+            }
+        }
+        return new Result(done, finish, time, preemptions);
+    }
+
+    private Task findVictim(DownloadJob best, List<Task> running, Map<String,Integer> runningPerHost){
+        boolean sameHost = runningPerHost.getOrDefault(best.getHost(), 0)>=perHost;
+        Task victim = null;
+        for(Task t: running){
+            if (t.job.getPriority().compareTo(best.getPriority())>=0) continue;
+            if (sameHost && !t.job.getHost().equals(best.getHost())) continue;
+            if (victim==null || t.job.getPriority().compareTo(victim.job.getPriority())<0) victim = t;
+        }
+        return victim;
+    }
+
+    /**
+     * @return mean time of taking the next job of an available host and adding it back
+     * to the end of its key (half of the jobs are of a host at limit)
+     */
+    private double measureOperations(SchedulingPolicy policy, int size){
+        Random random = new Random(seed);
+        PendingJobs pending = new PendingJobs(policy);
+        for(int i=0; i<size; i++){
+            int host = random.nextBoolean() ? 0 : 1 + random.nextInt(hosts);
+            DownloadPriority priority = DownloadPriority.values()[random.nextInt(DownloadPriority.values().length)];
+            pending.add(newJob("https://host" + host + ".test/watch?v=" + i, priority, (long)(MEDIAN_SIZE*Math.exp(random.nextGaussian()))));
+        }
+
+        int warmup = 200_000;
+        int measured = 500_000;
+        long start = 0;
+        for(int i=0; i<warmup+measured; i++){
+            if (i==warmup) start = System.nanoTime();
+            DownloadJob job = pending.next(host -> !host.equals("host0.test"));
+            pending.take(job);
+            pending.add(job);
+        }
+        return (System.nanoTime() - start)/(double)measured;
+    }
+
+    private static double mean(double[] values){
+        return Arrays.stream(values).average().orElse(0);
+    }
+
+    private static double percentile(double[] sorted, double p){
+        return sorted.length>0 ? sorted[Math.min(sorted.length-1, (int)(p*sorted.length))] : 0;
+    }
+
+}
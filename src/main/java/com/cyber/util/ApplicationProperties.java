@@ -64,6 +64,10 @@ public class ApplicationProperties extends Properties{
         }
     }
 
+    public String getFilePath() {
+        return filePath;
+    }
+
     @Override
     public synchronized Object put(Object key, Object value) {
         return super.put(key, String.valueOf(value));
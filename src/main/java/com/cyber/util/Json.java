@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.cyber.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer. Objects are parsed to {@code Map<String,Object>},
+ * arrays to {@code List<Object>}, numbers to Double or Long, plus String, Boolean and null.
+ * Writer accepts the same types (any Map, Collection and Number).
+ *
+ * @author Kirill Bereznyakov
+ */
+public class Json {
+
+    private final CharSequence src;
+    private int pos = 0;
+
+    private Json(CharSequence src){
+        this.src = src;
+    }
+
+    /**
+     * Parse JSON text.
+     * @param src JSON text
+     * @return parsed value
+     * @throws IllegalArgumentException on syntax error
+     */
+    public static Object parse(CharSequence src){
+        Json json = new Json(src);
+        Object value = json.readValue();
+        json.skipSpaces();
+        if (json.pos<src.length()) throw json.error("unexpected trailing data");
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String,Object> parseObject(CharSequence src){
+        Object value = parse(src);
+        if (!(value instanceof Map)) throw new IllegalArgumentException("JSON object expected");
+        return (Map<String,Object>)value;
+    }
+
+    /**
+     * @param value Map, Collection, String, Number, Boolean or null (other objects are written as strings)
+     * @return JSON text
+     */
+    public static String write(Object value){
+        StringBuilder sb = new StringBuilder();
+        write(sb, value);
+        return sb.toString();
+    }
+
+    public static void write(StringBuilder sb, Object value){
+        if (value==null){
+            sb.append("null");
+        }else if (value instanceof Map){
+            sb.append('{');
+            boolean first = true;
+            for(Map.Entry<?,?> e: ((Map<?,?>)value).entrySet()){
+                if (!first) sb.append(',');
+                first = false;
+                writeString(sb, String.valueOf(e.getKey()));
+                sb.append(':');
+                write(sb, e.getValue());
+            }
+            sb.append('}');
+        }else if (value instanceof Collection){
+            sb.append('[');
+            boolean first = true;
+            for(Object item: (Collection<?>)value){
+                if (!first) sb.append(',');
+                first = false;
+                write(sb, item);
+            }
+            sb.append(']');
+        }else if (value instanceof Number){
+            double d = ((Number)value).doubleValue();
+            sb.append(Double.isFinite(d) ? value.toString() : "null");
+        }else if (value instanceof Boolean){
+            sb.append(value.toString());
+        }else{
+            writeString(sb, value.toString());
+        }
+    }
+
+    private static void writeString(StringBuilder sb, String str){
+        sb.append('"');
+        for(int i=0; i<str.length(); i++){
+            char ch = str.charAt(i);
+            switch(ch){
+                case '"': sb.append("\\\""); break;
+                case '\\': sb.append("\\\\"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                case '\t': sb.append("\\t"); break;
+                default:
+                    if (ch<0x20){
+                        sb.append(String.format("\\u%04x", (int)ch));
+                    }else{
+                        sb.append(ch);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+
+    private Object readValue(){
+        skipSpaces();
+        if (pos>=src.length()) throw error("unexpected end");
+        char ch = src.charAt(pos);
+        switch(ch){
+            case '{': return readObject();
+            case '[': return readArray();
+            case '"': return readString();
+            case 't': expect("true"); return Boolean.TRUE;
+            case 'f': expect("false"); return Boolean.FALSE;
+            case 'n': expect("null"); return null;
+            default: return readNumber();
+        }
+    }
+
+    private Map<String,Object> readObject(){
+        Map<String,Object> map = new LinkedHashMap<>();
+        pos++;
+        skipSpaces();
+        if (peek()=='}'){
+            pos++;
+            return map;
+        }
+        while(true){
+            skipSpaces();
+            if (peek()!='"') throw error("object key expected");
+            String key = readString();
+            skipSpaces();
+            if (next()!=':') throw error("':' expected");
+            map.put(key, readValue());
+            skipSpaces();
+            char ch = next();
+            if (ch=='}') return map;
+            if (ch!=',') throw error("',' or '}' expected");
+        }
+    }
+
+    private List<Object> readArray(){
+        List<Object> list = new ArrayList<>();
+        pos++;
+        skipSpaces();
+        if (peek()==']'){
+            pos++;
+            return list;
+        }
+        while(true){
+            list.add(readValue());
+            skipSpaces();
+            char ch = next();
+            if (ch==']') return list;
+            if (ch!=',') throw error("',' or ']' expected");
+        }
+    }
+
+    private String readString(){
+        StringBuilder sb = new StringBuilder();
+        pos++;
+        while(true){
+            char ch = next();
+            if (ch=='"') return sb.toString();
+            if (ch!='\\'){
+                sb.append(ch);
+                continue;
+            }
+            ch = next();
+            switch(ch){
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (pos+4>src.length()) throw error("bad unicode escape");
+                    sb.append((char)Integer.parseInt(src.subSequence(pos, pos+4).toString(), 16));
+                    pos += 4;
+                    break;
+                default: sb.append(ch);
+            }
+        }
+    }
+
+    private Object readNumber(){
+        int start = pos;
+        boolean decimal = false;
+        while(pos<src.length()){
+            char ch = src.charAt(pos);
+            if (ch=='.' || ch=='e' || ch=='E'){
+                decimal = true;
+            }else if (!(ch=='-' || ch=='+' || (ch>='0' && ch<='9'))){
+                break;
+            }
+            pos++;
+        }
+        if (start==pos) throw error("unexpected character");
+        String str = src.subSequence(start, pos).toString();
+        try{
+            return decimal ? (Object)Double.valueOf(str) : (Object)Long.valueOf(str);
+        }catch(NumberFormatException ex){
+            throw error("bad number '" + str + "'");
+        }
+    }
+
+    private void expect(String word){
+        for(int i=0; i<word.length(); i++){
+            if (next()!=word.charAt(i)) throw error("'" + word + "' expected");
+        }
+    }
+
+    private void skipSpaces(){
+        while(pos<src.length() && Character.isWhitespace(src.charAt(pos))) pos++;
+    }
+
+    private char peek(){
+        if (pos>=src.length()) throw error("unexpected end");
+        return src.charAt(pos);
+    }
+
+    private char next(){
+        char ch = peek();
+        pos++;
+        return ch;
+    }
+
+    private IllegalArgumentException error(String message){
+        return new IllegalArgumentException("JSON error at " + pos + ": " + message);
+    }
+
+}
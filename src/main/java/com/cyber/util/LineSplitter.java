@@ -0,0 +1,89 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.cyber.util;
+
+/**
+ * Splits a byte stream into CR/LF terminated lines using one reusable buffer.
+ * Lines are passed to the handler as a (buffer, offset, length) slice with
+ * surrounding whitespace trimmed, empty lines are skipped. The slice is valid
+ * only until the handler returns.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class LineSplitter {
+
+    @FunctionalInterface
+    public interface LineHandler{
+        void onLine(byte[] buf, int offset, int length);
+    }
+
+    private final LineHandler handler;
+    private byte[] line;
+    private int length = 0;
+
+    public LineSplitter(int initialCapacity, LineHandler handler){
+        this.line = new byte[initialCapacity];
+        this.handler = handler;
+    }
+
+    public void feed(byte[] chunk, int offset, int count){
+        int end = offset + count;
+        for(int i=offset; i<end; i++){
+            byte b = chunk[i];
+            if (b=='\r' || b=='\n'){
+                flush();
+            }else{
+                if (length==line.length) grow();
+                line[length++] = b;
+            }
+        }
+    }
+
+    /**
+     * Emit buffered bytes as a line (used at the end of stream).
+     */
+    public void flush(){
+        int start = 0;
+        int end = length;
+        length = 0;
+
+        while(start<end && isSpace(line[start])) start++;
+        while(end>start && isSpace(line[end-1])) end--;
+
+        if (end>start) handler.onLine(line, start, end-start);
+    }
+
+    private void grow(){
+        byte[] buf = new byte[line.length*2];
+        System.arraycopy(line, 0, buf, 0, length);
+        line = buf;
+    }
+
+    private static boolean isSpace(byte b){
+        return b==' ' || b=='\t' || b=='\f' || b==0x0B || b==0;
+    }
+
+}
@@ -24,12 +24,16 @@
 
 package com.cyber.util;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.CharBuffer;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 /**
@@ -38,11 +42,21 @@ import java.util.function.Consumer;
  */
 public class RunnableProcess implements Runnable{
 
+    private static final int BUFFER_SIZE = 8*1024;
+    private static final int LINE_CAPACITY = 256;
+
+    public static final long DEFAULT_DESTROY_GRACE_PERIOD_MS = 5000;
+
     final String[] command;
-    Consumer<String> processOutputConsumer;
+    LineSplitter.LineHandler lineHandler;
     Consumer<Process> onExitProcessHandler;
     Charset charset = Charset.defaultCharset();
-    Process proc;
+    File outputFile;
+    String input;
+    volatile Process proc;
+    volatile boolean destroyed = false;
+    final CompletableFuture<Void> destroyedBeforeStart = new CompletableFuture<>();
+    long destroyGracePeriod = DEFAULT_DESTROY_GRACE_PERIOD_MS;
 
     public RunnableProcess(String...command){
         this.command = command;
@@ -54,80 +68,169 @@ public class RunnableProcess implements Runnable{
 
     @Override
     public void run() {
+        if (destroyed){
+            // destroyed before start, the process is never started
+            destroyedBeforeStart.complete(null);
+            return;
+        }
         try {
-            proc = new ProcessBuilder(command).start();
-
-            if (onExitProcessHandler!=null) proc.onExit().thenAccept(onExitProcessHandler);
-
-            if (processOutputConsumer!=null){
-                CharBuffer inBuf = CharBuffer.allocate(4*1024);
-                CharBuffer errBuf = CharBuffer.allocate(4*1024);
-
-                try(
-                    Reader in = new InputStreamReader(proc.getInputStream(), charset);
-                    Reader err = new InputStreamReader(proc.getErrorStream(), charset);
-                ){
-                    String line;
-                    while(proc.isAlive()){
-                        boolean doSleep = true;
-
-                        while((line=readLine(err,errBuf))!=null){
-                            processOutputConsumer.accept(line);
-                            doSleep = false;
-                        }
-
-                        while((line=readLine(in,inBuf))!=null){
-                            processOutputConsumer.accept(line);
-                            doSleep = false;
-                        }
-
-                        if (doSleep) Thread.sleep(10);
-                    }
+            ProcessBuilder builder = new ProcessBuilder(command);
+            if (outputFile!=null){
+                builder.redirectOutput(outputFile);
+            }else{
+                // stderr is merged into stdout by the OS so lines keep the order the child wrote them
+                builder.redirectErrorStream(true);
+            }
+            try{
+                proc = builder.start();
+            }catch(IOException ex){
+                destroyedBeforeStart.complete(null);
+                throw ex;
+            }
+            if (destroyed) destroy().thenRun(() -> destroyedBeforeStart.complete(null));
+
+            if (input!=null){
+                try(Writer stdin = new OutputStreamWriter(proc.getOutputStream(), charset)){
+                    stdin.write(input);
+                }catch(IOException ex){
+                    // process has exited without reading input, exit code tells the rest
                 }
             }
+
+            pumpOutput(outputFile!=null ? proc.getErrorStream() : proc.getInputStream());
+            proc.waitFor();
+
+            if (onExitProcessHandler!=null) onExitProcessHandler.accept(proc);
         } catch (IOException | InterruptedException ex) {
             throw new RuntimeException(ex);
         }
     }
 
-    protected String readLine(Reader in, CharBuffer buf) throws IOException{
-        String result = null;
-
-        while(in.ready()){
-            char ch = (char)in.read();
-            if (ch=='\r' || ch=='\n'){
-                buf.flip();
-                result = buf.toString().trim();
-                buf.clear();
-                break;
-            }else{
-                buf.put(ch);
+    /**
+     * Blocking bulk read of the process output until EOF. The pipe is always drained
+     * (even without output handler) so the child never stalls on a full pipe buffer,
+     * and everything written before exit is delivered.
+     * @param is process output stream
+     * @throws IOException
+     */
+    protected void pumpOutput(InputStream is) throws IOException{
+        byte[] buf = new byte[BUFFER_SIZE];
+        LineSplitter splitter = lineHandler!=null ? new LineSplitter(LINE_CAPACITY, lineHandler) : null;
+
+        try(is){
+            int count;
+            while((count=is.read(buf))!=-1){
+                if (splitter!=null) splitter.feed(buf, 0, count);
             }
+            if (splitter!=null) splitter.flush();
         }
-        return result;
     }
 
-    public RunnableProcess onOutput(Consumer<String> processOutputConsumer){
-        this.processOutputConsumer = processOutputConsumer;
+    /**
+     * Raw output lines handler. Receives a reused byte buffer slice, so nothing is
+     * decoded or allocated unless the handler does it itself.
+     * @param lineHandler
+     * @return
+     */
+    public RunnableProcess onOutputBytes(LineSplitter.LineHandler lineHandler){
+        this.lineHandler = lineHandler;
         return this;
     }
 
+    /**
+     * Decoded output lines handler.
+     * @param processOutputConsumer
+     * @return
+     */
+    public RunnableProcess onOutput(Consumer<String> processOutputConsumer){
+        return onOutputBytes((buf, offset, length) ->
+            processOutputConsumer.accept(new String(buf, offset, length, charset)));
+    }
+
     public RunnableProcess onExit(Consumer<Process> onExitProcessHandler){
         this.onExitProcessHandler = onExitProcessHandler;
         return this;
     }
 
+    /**
+     * Write process stdout to file, only stderr lines are passed to output handlers then.
+     * @param outputFile
+     * @return
+     */
+    public RunnableProcess redirectOutput(File outputFile){
+        this.outputFile = outputFile;
+        return this;
+    }
+
+    /**
+     * Text written to process stdin at start, then stdin is closed.
+     * @param input
+     * @return
+     */
+    public RunnableProcess input(String input){
+        this.input = input;
+        return this;
+    }
+
     public RunnableProcess charset(Charset charset){
         this.charset = charset;
         return this;
     }
 
-    public void destroy(){
-        if (proc.supportsNormalTermination()){
-            proc.destroy();
-        }else{
-            proc.destroyForcibly();
+    /**
+     * Terminate the process with all its descendants (merger, post-processors etc.).
+     * Processes are asked to exit normally, those still alive after the grace period
+     * are killed. If the process is not started yet, it won't be started (or is destroyed
+     * right after start, if it's starting now).
+     * @return future completed when all processes of the tree have exited
+     */
+    public CompletableFuture<Void> destroy(){
+        destroyed = true;
+        Process p = proc;
+        if (p==null) return destroyedBeforeStart;
+
+        // descendants are taken before the parent exits, orphans can't be found later
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(p.toHandle());
+        p.descendants().forEach(tree::add);
+
+        boolean graceful = p.supportsNormalTermination();
+        for(ProcessHandle handle: tree){
+            if (graceful){
+                handle.destroy();
+            }else{
+                handle.destroyForcibly();
+            }
         }
+
+        CompletableFuture<?>[] exits = tree.stream()
+            .map(ProcessHandle::onExit)
+            .toArray(CompletableFuture[]::new);
+        CompletableFuture<Void> terminated = CompletableFuture.allOf(exits);
+        if (graceful && destroyGracePeriod>=0){
+            CompletableFuture.delayedExecutor(destroyGracePeriod, TimeUnit.MILLISECONDS).execute(() -> {
+                if (!terminated.isDone()) tree.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+            });
+        }
+        return terminated;
+    }
+
+    /**
+     * Time given to the process tree to exit after {@link #destroy()} before it's killed.
+     * @param destroyGracePeriod millis, negative to never kill
+     * @return
+     */
+    public RunnableProcess destroyGracePeriod(long destroyGracePeriod){
+        this.destroyGracePeriod = destroyGracePeriod;
+        return this;
+    }
+
+    /**
+     * @return exit code of finished process
+     * @throws IllegalThreadStateException if process is not finished
+     */
+    public int exitValue(){
+        return proc.exitValue();
     }
 
     public boolean isAlive(){
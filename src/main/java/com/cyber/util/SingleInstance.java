@@ -0,0 +1,237 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Single application instance over a local socket. A new launch first tries to
+ * {@link #forward(List)} its arguments to the running instance and exits, only
+ * if nobody listens it becomes the instance by {@link #listen(Consumer)}.
+ * <p>
+ * Unix domain socket is used when the runtime supports it (Java 16+, looked up
+ * by reflection to keep Java 11 compatibility), otherwise loopback TCP with the
+ * port and a random token written to the same file. Both live in a private
+ * directory (0700 where POSIX permissions are supported), so other local users
+ * can't connect to the socket or read the token.
+ * <p>
+ * Protocol: client sends lines and closes output, instance answers "OK".
+ *
+ * @author Kirill Bereznyakov
+ */
+public class SingleInstance implements Closeable{
+
+    private static final String OK = "OK";
+    private static final int CONNECT_TIMEOUT_MS = 1000;
+    private static final String SOCKET_FILE_NAME = "instance.sock";
+    private static final Set<PosixFilePermission> PRIVATE_DIR = PosixFilePermissions.fromString("rwx------");
+
+    private final Path dir;
+    private final Path file;
+    private ServerSocketChannel server;
+    private String token = "";
+
+    /**
+     * @param dir private directory for the socket file (or port file for TCP fallback)
+     */
+    public SingleInstance(Path dir){
+        this.dir = dir;
+        this.file = dir.resolve(SOCKET_FILE_NAME);
+    }
+
+    /**
+     * @return true if the runtime supports Unix domain sockets
+     */
+    public static boolean isUnixSocketSupported(){
+        return unixFamily()!=null;
+    }
+
+    /**
+     * Send lines to the running instance.
+     * @param lines
+     * @return true if the running instance has received lines, false if there is no running instance
+     */
+    public boolean forward(List<String> lines){
+        if (!Files.exists(file)) return false;
+        try(SocketChannel channel = connect()){
+            Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+            if (!token.isEmpty()) writer.write(token + "\n");
+            for(String line: lines) writer.write(line + "\n");
+            writer.flush();
+            channel.shutdownOutput();
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            return OK.equals(reader.readLine());
+        }catch(IOException | RuntimeException ex){
+            // stale file of a dead instance
+            return false;
+        }
+    }
+
+    /**
+     * Become the running instance. Lines of every client are passed to the handler
+     * on the listener thread.
+     * @param handler
+     * @throws IOException if the socket can't be created
+     */
+    public void listen(Consumer<List<String>> handler) throws IOException{
+        createPrivateDir();
+        Files.deleteIfExists(file);
+        ProtocolFamily unix = unixFamily();
+        if (unix!=null){
+            server = (ServerSocketChannel)invoke(ServerSocketChannel.class, "open", ProtocolFamily.class, unix);
+            server.bind(unixAddress(file));
+        }else{
+            server = ServerSocketChannel.open();
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            byte[] random = new byte[16];
+            new SecureRandom().nextBytes(random);
+            StringBuilder sb = new StringBuilder();
+            for(byte b: random) sb.append(String.format("%02x", b));
+            token = sb.toString();
+            Files.writeString(file, ((InetSocketAddress)server.getLocalAddress()).getPort() + " " + token);
+        }
+        file.toFile().deleteOnExit();
+
+        Thread thread = new Thread(() -> acceptLoop(handler), "single-instance");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void acceptLoop(Consumer<List<String>> handler){
+        while(server.isOpen()){
+            try(SocketChannel channel = server.accept()){
+                BufferedReader reader = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+                if (!token.isEmpty() && !token.equals(reader.readLine())) continue;
+
+                List<String> lines = new ArrayList<>();
+                String line;
+                while((line = reader.readLine()) != null) lines.add(line);
+
+                handler.accept(lines);
+                Writer writer = new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8);
+                writer.write(OK + "\n");
+                writer.flush();
+            }catch(IOException ex){
+                if (server.isOpen()) System.err.println("single instance connection error: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void createPrivateDir() throws IOException{
+        if (!Files.getFileStore(dir.toAbsolutePath().getParent()).supportsFileAttributeView(PosixFileAttributeView.class)){
+            Files.createDirectories(dir);
+            return;
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)){
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(PRIVATE_DIR));
+        }
+        // reused directory must be ours, permissions are tightened if needed
+        PosixFileAttributes attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.owner().getName().equals(System.getProperty("user.name"))){
+            throw new IOException(dir + " is owned by " + attrs.owner().getName());
+        }
+        if (!attrs.permissions().equals(PRIVATE_DIR)) Files.setPosixFilePermissions(dir, PRIVATE_DIR);
+    }
+
+    private SocketChannel connect() throws IOException{
+        ProtocolFamily unix = unixFamily();
+        if (unix!=null){
+            SocketChannel channel = (SocketChannel)invoke(SocketChannel.class, "open", ProtocolFamily.class, unix);
+            channel.connect(unixAddress(file));
+            return channel;
+        }
+        String[] portAndToken = Files.readString(file).trim().split(" ");
+        token = portAndToken.length>1 ? portAndToken[1] : "";
+        SocketChannel channel = SocketChannel.open();
+        channel.socket().connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+            Integer.parseInt(portAndToken[0])), CONNECT_TIMEOUT_MS);
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException{
+        if (server==null) return;
+        server.close();
+        Files.deleteIfExists(file);
+    }
+
+    private static ProtocolFamily unixFamily(){
+        try{
+            return StandardProtocolFamily.valueOf("UNIX");
+        }catch(IllegalArgumentException ex){
+            return null;
+        }
+    }
+
+    private static SocketAddress unixAddress(Path path){
+        try{
+            return (SocketAddress)Class.forName("java.net.UnixDomainSocketAddress")
+                .getMethod("of", Path.class)
+                .invoke(null, path);
+        }catch(ReflectiveOperationException ex){
+            throw new UnsupportedOperationException("unix domain sockets are not supported", ex);
+        }
+    }
+
+    private static Object invoke(Class<?> cls, String method, Class<?> argType, Object arg) throws IOException{
+        try{
+            return cls.getMethod(method, argType).invoke(null, arg);
+        }catch(InvocationTargetException ex){
+            if (ex.getCause() instanceof IOException) throw (IOException)ex.getCause();
+            throw new IOException(ex.getCause());
+        }catch(ReflectiveOperationException ex){
+            throw new UnsupportedOperationException(method + " is not supported", ex);
+        }
+    }
+
+}
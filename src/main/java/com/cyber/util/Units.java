@@ -0,0 +1,71 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.util;
+
+/**
+ * Human readable sizes, speeds and durations.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class Units {
+
+    /**
+     * @param bytes size in bytes
+     * @return human readable size or empty string for unknown size
+     */
+    public static String formatSize(long bytes){
+        if (bytes<0) return "";
+        if (bytes<1024) return bytes + " B";
+        String units = "KMGT";
+        double size = bytes;
+        int unit = -1;
+        while(size>=1024 && unit<units.length()-1){
+            size /= 1024;
+            unit++;
+        }
+        return String.format("%.1f %siB", size, units.charAt(unit));
+    }
+
+    /**
+     * @param bytesPerSecond
+     * @return human readable speed or empty string for unknown speed
+     */
+    public static String formatSpeed(double bytesPerSecond){
+        return bytesPerSecond<0 ? "" : formatSize((long)bytesPerSecond) + "/s";
+    }
+
+    /**
+     * @param seconds
+     * @return time like 01:20 or 1:02:03, empty string for unknown time
+     */
+    public static String formatDuration(long seconds){
+        if (seconds<0) return "";
+        long h = seconds / 3600;
+        long m = seconds / 60 % 60;
+        long s = seconds % 60;
+        return h>0 ? String.format("%d:%02d:%02d", h, m, s) : String.format("%02d:%02d", m, s);
+    }
+
+}
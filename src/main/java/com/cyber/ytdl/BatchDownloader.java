@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import com.cyber.util.ProcessRuntime;
+import com.cyber.util.RunnableProcess;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Downloads several jobs with identical options by one downloader process,
+ * so interpreter start and extractors import are paid once per batch.
+ * URLs are passed through stdin (--batch-file -). Downloader processes them
+ * in order, the output is split back to jobs by "Extracting URL" lines. A job is
+ * done only when its completion marker ({@link #FINISHED_URL_PRINT}) is printed,
+ * an error line naming another remaining job by id or URL fails that job.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class BatchDownloader {
+
+    /** --print argument: completion marker of a batch item, after post-processing and move */
+    public static final String FINISHED_URL_PRINT = "after_move:[batch] Finished URL: %(original_url)s";
+
+    private static final Pattern EXTRACTING_URL_PATTERN = Pattern.compile("^\\[[^\\]]+\\] Extracting URL: (.+)$");
+    private static final Pattern FINISHED_URL_PATTERN = Pattern.compile("^\\[batch\\] Finished URL: (.+)$");
+
+    private final Map<String,DownloadJob> remaining = new LinkedHashMap<>();
+    private final List<DownloadJob> jobs;
+    private final DownloadProgressScanner progressScanner = new DownloadProgressScanner();
+    private final DownloadProgress progress = new DownloadProgress();
+    private final Charset charset = Charset.defaultCharset();
+
+    private volatile RunnableProcess proc;
+    private DownloadJob current;
+    private FailureClass currentFailure;
+    private volatile boolean interrupted = false;
+    /** worker slot is freed, guarded by the queue lock */
+    boolean released = false;
+
+    private Consumer<DownloadJob> itemStartHandler = job -> {};
+    private BiConsumer<DownloadJob,String> itemMessageHandler = (job, line) -> {};
+    private BiConsumer<DownloadJob,DownloadProgress> itemProgressHandler = (job, p) -> {};
+    private BiConsumer<DownloadJob,FailureClass> itemFinishHandler = (job, failure) -> {};
+    private Consumer<List<DownloadJob>> batchFinishHandler = unprocessed -> {};
+
+    /**
+     * @param jobs jobs with equal {@link VideoDownloaderCommand#getBatchKey()}
+     */
+    public BatchDownloader(List<DownloadJob> jobs){
+        this.jobs = List.copyOf(jobs);
+        jobs.forEach(job -> remaining.put(MetadataCache.canonicalUrl(job.getUrl()), job));
+    }
+
+    public void execute(){
+        String urls = jobs.stream()
+            .map(DownloadJob::getUrl)
+            .collect(Collectors.joining("\n", "", "\n"));
+
+        proc = new RunnableProcess(jobs.get(0).getCommand().toBatchList())
+            .charset(charset)
+            .input(urls)
+            .onOutputBytes(this::handleOutput)
+            .onExit(p -> handleExit(p.exitValue()));
+        // destroyed meanwhile: either destroy() has seen the process or it's destroyed here, it's never started
+        if (interrupted) proc.destroy();
+
+        RunnableProcess startedProc = proc;
+        ProcessRuntime.getDefault().execute(() -> {
+            try{
+                startedProc.run();
+            }catch(RuntimeException ex){
+                // process can't be started, all jobs are returned unprocessed
+                handleExit(-1);
+            }
+        });
+    }
+
+    protected void handleOutput(byte[] buf, int offset, int length){
+        if (progressScanner.scan(buf, offset, length, progress)){
+            if (current!=null){
+                progress.setLine(buf, offset, length, charset);
+                itemProgressHandler.accept(current, progress);
+            }
+            return;
+        }
+
+        String line = new String(buf, offset, length, charset);
+        Matcher mat = FINISHED_URL_PATTERN.matcher(line);
+        if (mat.find()){
+            if (current!=null && MetadataCache.canonicalUrl(mat.group(1)).equals(MetadataCache.canonicalUrl(current.getUrl()))){
+                itemFinishHandler.accept(current, null);
+                current = null;
+                currentFailure = null;
+            }
+            return;
+        }
+
+        mat = EXTRACTING_URL_PATTERN.matcher(line);
+        if (mat.find()){
+            // nested extractors (redirects, embeds) print unknown URLs, those belong to the current job
+            DownloadJob next = remaining.remove(MetadataCache.canonicalUrl(mat.group(1)));
+            if (next!=null){
+                failCurrent();
+                current = next;
+                itemStartHandler.accept(current);
+            }
+        }
+
+        FailureClass failure = FailureClass.classify(line);
+        if (failure!=null){
+            // URL failed before its "Extracting URL" line (invalid, unsupported)
+            DownloadJob named = findRemaining(line);
+            if (named!=null){
+                remaining.values().remove(named);
+                itemStartHandler.accept(named);
+                itemMessageHandler.accept(named, line);
+                itemFinishHandler.accept(named, failure);
+                return;
+            }
+            if (current!=null) currentFailure = failure;
+        }
+
+        if (current!=null) itemMessageHandler.accept(current, line);
+    }
+
+    /**
+     * @return remaining job named by id or URL in the line or null
+     */
+    private DownloadJob findRemaining(String line){
+        for(DownloadJob job: remaining.values()){
+            if (line.contains(job.getUrl())) return job;
+            String id = job.getMetadata()!=null ? job.getMetadata().getId() : videoId(job.getUrl());
+            if (!id.isEmpty() && line.contains(" " + id + ":")) return job;
+        }
+        return null;
+    }
+
+    /**
+     * @param url
+     * @return "v" query parameter or the last path segment, empty string if none
+     */
+    static String videoId(String url){
+        try{
+            URI uri = new URI(url.trim());
+            String query = uri.getRawQuery();
+            if (query!=null){
+                for(String param: query.split("&")){
+                    if (param.startsWith("v=")) return param.substring(2);
+                }
+            }
+            String path = uri.getPath();
+            if (path==null) return "";
+            String[] segments = path.split("/");
+            return segments.length>0 ? segments[segments.length-1] : "";
+        }catch(URISyntaxException ex){
+            return "";
+        }
+    }
+
+    /**
+     * Finish the current job without completion marker: aborted or failed.
+     */
+    private void failCurrent(){
+        if (current==null) return;
+        itemFinishHandler.accept(current, currentFailure!=null ? currentFailure : FailureClass.UNKNOWN);
+        current = null;
+        currentFailure = null;
+    }
+
+    protected void handleExit(int exitCode){
+        if (interrupted) return;
+        failCurrent();
+        batchFinishHandler.accept(new ArrayList<>(remaining.values()));
+    }
+
+    /**
+     * Destroy batch process. No handlers are called after that.
+     * @return future completed when the process tree has exited
+     */
+    public CompletableFuture<Void> destroy(){
+        interrupted = true;
+        RunnableProcess p = proc;
+        return p!=null ? p.destroy() : CompletableFuture.completedFuture(null);
+    }
+
+    public List<DownloadJob> getJobs(){
+        return jobs;
+    }
+
+    public void onItemStart(Consumer<DownloadJob> itemStartHandler){
+        this.itemStartHandler = itemStartHandler;
+    }
+
+    public void onItemMessage(BiConsumer<DownloadJob,String> itemMessageHandler){
+        this.itemMessageHandler = itemMessageHandler;
+    }
+
+    /**
+     * Progress handler. {@link DownloadProgress} instance is reused, don't keep the reference outside of handler.
+     * @param itemProgressHandler
+     */
+    public void onItemProgress(BiConsumer<DownloadJob,DownloadProgress> itemProgressHandler){
+        this.itemProgressHandler = itemProgressHandler;
+    }
+
+    /**
+     * Job finish handler, receives failure class or null for successful job.
+     * @param itemFinishHandler
+     */
+    public void onItemFinish(BiConsumer<DownloadJob,FailureClass> itemFinishHandler){
+        this.itemFinishHandler = itemFinishHandler;
+    }
+
+    /**
+     * Batch process exit handler, receives jobs which were not processed.
+     * @param batchFinishHandler
+     */
+    public void onBatchFinish(Consumer<List<DownloadJob>> batchFinishHandler){
+        this.batchFinishHandler = batchFinishHandler;
+    }
+
+}
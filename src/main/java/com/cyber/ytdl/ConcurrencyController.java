@@ -0,0 +1,389 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * AIMD controller of {@link DownloadQueue} concurrency. The total limit and a
+ * limit per source host start from one download. Downloaded bytes are summed up
+ * per interval. A limit grows by one while it is in use and jobs wait for it, and
+ * keeps growing while every step improves the throughput. A step without gain is
+ * taken back and the limit holds for a few intervals before the next probe.
+ * <p>
+ * Cuts are multiplicative: the host limit is halved on rate limiting (HTTP 429),
+ * 403 and network errors in its downloads, at most once per interval. Any limit
+ * is halved when the throughput falls after a step up (throttling). The configured
+ * max parallel and per host values are upper bounds.
+ * <p>
+ * Thread-safe. {@link #update} is called by the queue with its lock held.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class ConcurrencyController {
+
+    public static final long DEFAULT_INTERVAL_MS = 5000;
+    public static final String TOTAL = "";
+
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double GAIN_THRESHOLD = 0.05;
+    private static final double DROP_THRESHOLD = 0.2;
+    private static final int HOLD_INTERVALS = 6;
+    private static final int IDLE_INTERVALS = 120;
+    private static final int MAX_DECISIONS = 100;
+
+    public enum Action{
+        INCREASE("increase"),
+        DECREASE("decrease"),
+        REVERT("revert");
+
+        private final String title;
+
+        Action(String title){
+            this.title = title;
+        }
+
+        @Override
+        public String toString() {
+            return title;
+        }
+    }
+
+    /**
+     * Limit change.
+     */
+    public static class Decision{
+        private final long time;
+        private final String host;
+        private final Action action;
+        private final int limit;
+        private final double throughput;
+        private final String reason;
+
+        Decision(long time, String host, Action action, int limit, double throughput, String reason){
+            this.time = time;
+            this.host = host;
+            this.action = action;
+            this.limit = limit;
+            this.throughput = throughput;
+            this.reason = reason;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * @return source host or {@link #TOTAL} for the total limit
+         */
+        public String getHost() {
+            return host;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * @return new limit
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * @return bytes per second of the last interval
+         */
+        public double getThroughput() {
+            return throughput;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s to %d: %s", host.isEmpty() ? "total" : host, action, limit, reason);
+        }
+    }
+
+    /**
+     * AIMD state of the total or host limit.
+     */
+    private static class Limit{
+        final String host;
+        double value = 1;
+        long bytes = 0;
+        double throughput = -1;
+        double gain = 0;
+        boolean probing = false;
+        boolean cut = false;
+        int hold = 0;
+        int idle = 0;
+
+        Limit(String host){
+            this.host = host;
+        }
+
+        int get(int ceiling){
+            return Math.max(1, Math.min(ceiling, (int)value));
+        }
+    }
+
+    private final long interval;
+    private final Limit total = new Limit(TOTAL);
+    private final Map<String,Limit> hosts = new HashMap<>();
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+    private volatile long nextUpdate;
+    private long lastUpdate;
+    private long increases = 0;
+    private long decreases = 0;
+
+    public ConcurrencyController(){
+        this(DEFAULT_INTERVAL_MS);
+    }
+
+    /**
+     * @param interval throughput measurement interval in millis
+     */
+    public ConcurrencyController(long interval){
+        this.interval = Math.max(1, interval);
+        this.lastUpdate = System.currentTimeMillis();
+        this.nextUpdate = lastUpdate + this.interval;
+    }
+
+    /**
+     * Count downloaded bytes of a job progress report. The first report of a start is
+     * the base (resumed part is not counted), smaller value means the next file.
+     * @param job
+     * @param downloadedBytes reported downloaded bytes of the current file
+     */
+    public synchronized void record(DownloadJob job, long downloadedBytes){
+        long previous = job.reportedBytes;
+        job.reportedBytes = downloadedBytes;
+        if (previous<0 || downloadedBytes<=0) return;
+        long delta = downloadedBytes>=previous ? downloadedBytes-previous : downloadedBytes;
+        total.bytes += delta;
+        host(job.getHost()).bytes += delta;
+    }
+
+    /**
+     * Cut the host limit on a failure caused by load.
+     * @param host source host
+     * @param failure failure class of downloader output line
+     * @return true if the limit was cut
+     */
+    public synchronized boolean failure(String host, FailureClass failure){
+        if (failure!=FailureClass.RATE_LIMITED && failure!=FailureClass.FORBIDDEN && failure!=FailureClass.NETWORK) return false;
+        Limit limit = host(host);
+        if (limit.cut) return false;
+        limit.cut = true;
+        decrease(limit, System.currentTimeMillis(), failure.toString());
+        return true;
+    }
+
+    /**
+     * Close the interval: evaluate throughput and move the limits.
+     * @param ceiling max parallel jobs
+     * @param hostCeiling max parallel jobs per host
+     * @param running running jobs count
+     * @param runningPerHost running jobs count by host, hosts without progress reports yet included
+     * @param waiting true if a queued job could start with higher total limit
+     * @param hostWaiting true if a queued job of the host waits for a slot
+     * @return true if any limit was increased
+     */
+    synchronized boolean update(int ceiling, int hostCeiling, int running, Map<String,Integer> runningPerHost,
+            boolean waiting, Predicate<String> hostWaiting){
+        long now = System.currentTimeMillis();
+        if (now<nextUpdate) return false;
+        double seconds = (now - lastUpdate)/1000.0;
+        lastUpdate = now;
+        nextUpdate = now + interval;
+        runningPerHost.keySet().forEach(this::host);
+
+        // a step of a host is wasted while the total limit holds it, so they grow together
+        boolean totalGrows = evaluate(total, now, seconds, ceiling);
+        boolean totalRoom = running<total.get(ceiling) || totalGrows;
+        boolean increased = false;
+        for(Iterator<Limit> it = hosts.values().iterator(); it.hasNext(); ){
+            Limit limit = it.next();
+            int hostRunning = runningPerHost.getOrDefault(limit.host, 0);
+            limit.idle = hostRunning>0 || limit.bytes>0 ? 0 : limit.idle+1;
+            if (limit.idle>IDLE_INTERVALS){
+                it.remove();
+                continue;
+            }
+            if (evaluate(limit, now, seconds, hostCeiling) && totalRoom
+                    && hostRunning>=limit.get(hostCeiling) && hostWaiting.test(limit.host)){
+                increase(limit, now, hostCeiling);
+                increased = true;
+            }
+        }
+        if (totalGrows && running>=total.get(ceiling) && (waiting || increased)){
+            increase(total, now, ceiling);
+            increased = true;
+        }
+        return increased;
+    }
+
+    /**
+     * Close the interval of a limit: cut it if the throughput fell after the last
+     * step, take the step back if it didn't help.
+     * @return true if the limit may grow
+     */
+    private boolean evaluate(Limit limit, long now, double seconds, int ceiling){
+        double throughput = limit.bytes/seconds;
+        double previous = limit.throughput;
+        limit.bytes = 0;
+        limit.throughput = throughput;
+        limit.gain = 0;
+        limit.value = Math.min(limit.value, Math.max(1, ceiling));
+
+        if (limit.cut){
+            // wait for the effect of the cut
+            limit.cut = false;
+            limit.probing = false;
+            limit.hold = HOLD_INTERVALS;
+            return false;
+        }
+        if (limit.probing){
+            limit.probing = false;
+            if (throughput<previous*(1-DROP_THRESHOLD)){
+                decrease(limit, now, String.format("throughput down %.0f%% after increase", 100*(1-throughput/previous)));
+                limit.hold = HOLD_INTERVALS;
+                return false;
+            }
+            if (throughput<previous*(1+GAIN_THRESHOLD)){
+                limit.value = Math.max(1, limit.value-1);
+                limit.hold = HOLD_INTERVALS;
+                decide(limit, now, Action.REVERT, "no throughput gain");
+                return false;
+            }
+            // keep probing while the limit is used
+            limit.gain = throughput/previous - 1;
+        }else if (limit.hold>0){
+            limit.hold--;
+            return false;
+        }
+        return limit.value<ceiling;
+    }
+
+    private void increase(Limit limit, long now, int ceiling){
+        limit.value = Math.min(ceiling, Math.floor(limit.value)+1);
+        limit.probing = true;
+        increases++;
+        decide(limit, now, Action.INCREASE, limit.gain>0
+            ? String.format("throughput up %.0f%%", 100*limit.gain)
+            : "limit reached, jobs waiting");
+    }
+
+    private void decrease(Limit limit, long now, String reason){
+        limit.value = Math.max(1, limit.value*DECREASE_FACTOR);
+        limit.probing = false;
+        decreases++;
+        decide(limit, now, Action.DECREASE, reason);
+    }
+
+    private void decide(Limit limit, long now, Action action, String reason){
+        decisions.addLast(new Decision(now, limit.host, action, (int)Math.max(1, limit.value), Math.max(0, limit.throughput), reason));
+        if (decisions.size()>MAX_DECISIONS) decisions.removeFirst();
+    }
+
+    private Limit host(String host){
+        return hosts.computeIfAbsent(host, Limit::new);
+    }
+
+    /**
+     * @param ceiling max parallel jobs
+     * @return current total limit
+     */
+    public synchronized int getLimit(int ceiling){
+        return total.get(ceiling);
+    }
+
+    /**
+     * @param host source host
+     * @param ceiling max parallel jobs per host
+     * @return current host limit
+     */
+    public synchronized int getHostLimit(String host, int ceiling){
+        Limit limit = hosts.get(host);
+        return limit!=null ? limit.get(ceiling) : 1;
+    }
+
+    /**
+     * @return host limits, hosts without downloads are dropped after a while
+     */
+    public synchronized Map<String,Integer> getHostLimits(){
+        Map<String,Integer> map = new LinkedHashMap<>();
+        hosts.values().forEach(limit -> map.put(limit.host, (int)limit.value));
+        return map;
+    }
+
+    /**
+     * @return total bytes per second of the last interval
+     */
+    public synchronized double getThroughput(){
+        return Math.max(0, total.throughput);
+    }
+
+    /**
+     * @param host
+     * @return host bytes per second of the last interval
+     */
+    public synchronized double getThroughput(String host){
+        Limit limit = hosts.get(host);
+        return limit!=null ? Math.max(0, limit.throughput) : 0;
+    }
+
+    public synchronized long getIncreaseCount(){
+        return increases;
+    }
+
+    public synchronized long getDecreaseCount(){
+        return decreases;
+    }
+
+    /**
+     * @return recent limit changes, oldest first
+     */
+    public synchronized List<Decision> getDecisions(){
+        return new ArrayList<>(decisions);
+    }
+
+    public long getInterval(){
+        return interval;
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ * Finished download attempt record.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadAttempt {
+
+    private final int number;
+    private final int exitCode;
+    private final FailureClass failure;
+    private final long startTime;
+    private final long duration;
+    private final long retryDelay;
+
+    public DownloadAttempt(int number, int exitCode, FailureClass failure, long startTime, long duration, long retryDelay){
+        this.number = number;
+        this.exitCode = exitCode;
+        this.failure = failure;
+        this.startTime = startTime;
+        this.duration = duration;
+        this.retryDelay = retryDelay;
+    }
+
+    public int getNumber() {
+        return number;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return failure class or null for successful attempt
+     */
+    public FailureClass getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return start time in epoch millis
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return duration in millis
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * @return delay in millis before the next attempt or -1 if there was no retry
+     */
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("attempt ").append(number).append(": exit ").append(exitCode);
+        if (failure!=null) sb.append(", ").append(failure);
+        sb.append(", ").append(duration).append(" ms");
+        if (retryDelay>=0) sb.append(", retry in ").append(retryDelay).append(" ms");
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ * Download event published by {@link DownloadEventStream}. Events are immutable.
+ *
+ * @author Kirill Bereznyakov
+ */
+public abstract class DownloadEvent {
+
+    private final DownloadJob job;
+    private final long time = System.currentTimeMillis();
+
+    protected DownloadEvent(DownloadJob job){
+        this.job = job;
+    }
+
+    public DownloadJob getJob() {
+        return job;
+    }
+
+    public long getJobId() {
+        return job.getId();
+    }
+
+    /**
+     * @return event time in epoch millis
+     */
+    public long getTime() {
+        return time;
+    }
+
+    @Override
+    public String toString() {
+        return "[#" + job.getId() + "] " + getClass().getSimpleName().toLowerCase();
+    }
+
+
+    /**
+     * Job process started.
+     */
+    public static class Started extends DownloadEvent{
+        public Started(DownloadJob job){
+            super(job);
+        }
+    }
+
+    /**
+     * Console line of the job process (not a progress line).
+     */
+    public static class Output extends DownloadEvent{
+        private final String line;
+
+        public Output(DownloadJob job, String line){
+            super(job);
+            this.line = line;
+        }
+
+        public String getLine() {
+            return line;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " " + line;
+        }
+    }
+
+    /**
+     * Progress line values, copied from the reused reader holder.
+     */
+    public static class Progress extends DownloadEvent{
+        private final DownloadProgress progress = new DownloadProgress();
+        private final float overallPercent;
+
+        public Progress(DownloadJob job, DownloadProgress progress){
+            super(job);
+            this.progress.copyFrom(progress);
+            this.overallPercent = job.getPercent();
+        }
+
+        /**
+         * @return progress of the current file
+         */
+        public DownloadProgress getProgress() {
+            return progress;
+        }
+
+        /**
+         * @return overall job percent across stages
+         */
+        public float getOverallPercent() {
+            return overallPercent;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + String.format(" %.1f%%", overallPercent);
+        }
+    }
+
+    /**
+     * Job moved to another download stage.
+     */
+    public static class StageChanged extends DownloadEvent{
+        private final DownloadStage stage;
+
+        public StageChanged(DownloadJob job, DownloadStage stage){
+            super(job);
+            this.stage = stage;
+        }
+
+        public DownloadStage getStage() {
+            return stage;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " " + stage;
+        }
+    }
+
+    /**
+     * Attempt failed and the next one is scheduled.
+     */
+    public static class Retry extends DownloadEvent{
+        private final int attempt;
+
+        public Retry(DownloadJob job, int attempt){
+            super(job);
+            this.attempt = attempt;
+        }
+
+        /**
+         * @return number of the next attempt
+         */
+        public int getAttempt() {
+            return attempt;
+        }
+
+        @Override
+        public String toString() {
+            return super.toString() + " " + attempt;
+        }
+    }
+
+    /**
+     * Job paused by user, the worker slot is released.
+     */
+    public static class Paused extends DownloadEvent{
+        public Paused(DownloadJob job){
+            super(job);
+        }
+    }
+
+    /**
+     * Paused job is queued again.
+     */
+    public static class Resumed extends DownloadEvent{
+        public Resumed(DownloadJob job){
+            super(job);
+        }
+    }
+
+    /**
+     * Job finished successfully.
+     */
+    public static class Completed extends DownloadEvent{
+        public Completed(DownloadJob job){
+            super(job);
+        }
+    }
+
+    /**
+     * Job finished with error, no more attempts.
+     */
+    public static class Failed extends DownloadEvent{
+        public Failed(DownloadJob job){
+            super(job);
+        }
+    }
+
+    /**
+     * Job cancelled by user.
+     */
+    public static class Cancelled extends DownloadEvent{
+        public Cancelled(DownloadJob job){
+            super(job);
+        }
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Multi-subscriber stream of {@link DownloadEvent}. Every subscriber gets its own
+ * bounded buffer and overflow policy, events are delivered asynchronously by the
+ * executor. Publishing never blocks: when a subscriber buffer is full the event
+ * is dropped for that subscriber only, so a slow subscriber can't stall process
+ * output readers.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadEventStream implements Flow.Publisher<DownloadEvent>, Closeable{
+
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * Subscriber buffer overflow policy.
+     */
+    public enum Overflow{
+        /** Every event takes a buffer slot, new events are dropped when the buffer is full. */
+        DROP,
+        /** Progress events of a job waiting in the buffer are replaced by newer ones, other events as DROP. */
+        COALESCE
+    }
+
+    private final Executor executor;
+    private final List<Channel> channels = new CopyOnWriteArrayList<>();
+
+    public DownloadEventStream(){
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param executor delivery executor shared by subscribers
+     */
+    public DownloadEventStream(Executor executor){
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribe with default buffer size and progress coalescing.
+     * @param subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super DownloadEvent> subscriber) {
+        subscribe(subscriber, DEFAULT_BUFFER_SIZE, Overflow.COALESCE);
+    }
+
+    /**
+     * @param subscriber
+     * @param bufferSize max events buffered for this subscriber
+     * @param overflow what to do when the subscriber doesn't keep up
+     */
+    public void subscribe(Flow.Subscriber<? super DownloadEvent> subscriber, int bufferSize, Overflow overflow){
+        Channel channel = new Channel(bufferSize, overflow);
+        channels.add(channel);
+        channel.publisher.subscribe(new ChannelSubscriber(channel, subscriber));
+    }
+
+    public boolean hasSubscribers(){
+        return !channels.isEmpty();
+    }
+
+    /**
+     * Offer event to all subscribers without blocking.
+     * @param event
+     */
+    public void publish(DownloadEvent event){
+        for(Channel channel: channels){
+            if (!channel.publisher.hasSubscribers()){
+                // subscriber cancelled or failed
+                channels.remove(channel);
+                channel.publisher.close();
+                continue;
+            }
+            channel.offer(event);
+        }
+    }
+
+    /**
+     * @return events dropped for all subscribers
+     */
+    public long getDropped(){
+        return channels.stream().mapToLong(channel -> channel.dropped.get()).sum();
+    }
+
+    /**
+     * Complete all subscriptions, buffered events are still delivered.
+     */
+    @Override
+    public void close(){
+        channels.forEach(channel -> channel.publisher.close());
+        channels.clear();
+    }
+
+
+    /**
+     * Buffer of one subscriber. Coalesced progress is queued as a job marker,
+     * the latest progress of the job is taken when the marker is delivered.
+     */
+    private class Channel{
+        final SubmissionPublisher<Object> publisher;
+        final Overflow overflow;
+        final ConcurrentHashMap<DownloadJob,DownloadEvent.Progress> latest = new ConcurrentHashMap<>();
+        final AtomicLong dropped = new AtomicLong();
+
+        Channel(int bufferSize, Overflow overflow){
+            this.publisher = new SubmissionPublisher<>(executor, bufferSize);
+            this.overflow = overflow;
+        }
+
+        void offer(DownloadEvent event){
+            Object item = event;
+            if (overflow==Overflow.COALESCE && event instanceof DownloadEvent.Progress){
+                // marker is already buffered, the newer value replaces the old one
+                if (latest.put(event.getJob(), (DownloadEvent.Progress)event)!=null) return;
+                item = event.getJob();
+            }
+            publisher.offer(item, (subscriber, dropItem) -> {
+                dropped.incrementAndGet();
+                if (dropItem instanceof DownloadJob) latest.remove(dropItem);
+                return false;
+            });
+        }
+    }
+
+    private static class ChannelSubscriber implements Flow.Subscriber<Object>{
+        private final Channel channel;
+        private final Flow.Subscriber<? super DownloadEvent> subscriber;
+        private Flow.Subscription subscription;
+
+        ChannelSubscriber(Channel channel, Flow.Subscriber<? super DownloadEvent> subscriber){
+            this.channel = channel;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscriber.onSubscribe(subscription);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            if (item instanceof DownloadJob){
+                DownloadEvent.Progress progress = channel.latest.remove(item);
+                if (progress==null){
+                    // marker without value, return the demand unit to the subscriber
+                    subscription.request(1);
+                    return;
+                }
+                subscriber.onNext(progress);
+            }else{
+                subscriber.onNext((DownloadEvent)item);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            subscriber.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            subscriber.onComplete();
+        }
+    }
+
+}
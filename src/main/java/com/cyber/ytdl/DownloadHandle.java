@@ -0,0 +1,79 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Running download task returned by {@link VideoDownloader#execute(VideoDownloaderCommand)}.
+ * The result future completes when the last attempt is finished: normally with
+ * a successful or failed {@link DownloadResult}, exceptionally if the downloader
+ * can't be started, and is cancelled by {@link #cancel()}. Cancelling the future
+ * itself also stops the download.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadHandle {
+
+    private final VideoDownloader downloader;
+    private final CompletableFuture<DownloadResult> result;
+
+    DownloadHandle(VideoDownloader downloader, CompletableFuture<DownloadResult> result){
+        this.downloader = downloader;
+        this.result = result;
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) downloader.destroy();
+        });
+    }
+
+    public CompletableFuture<DownloadResult> getResult() {
+        return result;
+    }
+
+    /**
+     * Stop the process and pending retries.
+     * @return true if the task was running
+     */
+    public boolean cancel(){
+        return result.cancel(false);
+    }
+
+    public boolean isDone(){
+        return result.isDone();
+    }
+
+    /**
+     * @return finished attempts so far
+     */
+    public List<DownloadAttempt> getAttempts(){
+        return downloader.getAttempts();
+    }
+
+    public VideoDownloader getDownloader() {
+        return downloader;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queued download task with its current state.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadJob {
+
+    private static final AtomicLong ID_SEQUENCE = new AtomicLong(0);
+
+    private final long id;
+    private final VideoDownloaderCommand command;
+    private final String host;
+
+    private volatile DownloadJobState state = DownloadJobState.QUEUED;
+    private volatile float percent = 0;
+    private volatile float speed = -1;
+    private volatile int eta = -1;
+    private volatile long downloadedBytes = -1;
+    private volatile long progressTime = 0;
+    private final DownloadStageTracker stages = new DownloadStageTracker();
+    private volatile int attempt = 0;
+    private volatile VideoMetadata metadata;
+    VideoDownloader downloader;
+    CompletableFuture<VideoMetadata> extraction;
+    /** exit of the last destroyed process tree, the job isn't started again before it */
+    CompletableFuture<Void> terminated;
+    BatchDownloader batch;
+    boolean batchable = true;
+    long scheduleKey;
+    long scheduleSequence;
+    long reportedBytes = -1;
+
+    public DownloadJob(VideoDownloaderCommand command){
+        this(ID_SEQUENCE.incrementAndGet(), command);
+    }
+
+    /**
+     * Create job with known id (restored job). Next new job ids will be greater.
+     * @param id job id
+     * @param command
+     */
+    public DownloadJob(long id, VideoDownloaderCommand command){
+        ID_SEQUENCE.accumulateAndGet(id, Math::max);
+        this.id = id;
+        this.command = command;
+        this.host = getHost(command.getUrl());
+    }
+
+    /**
+     * Get source host name without "www." prefix.
+     * @param url
+     * @return host or empty string for malformed url
+     */
+    public static String getHost(String url){
+        try{
+            String host = URI.create(url.trim()).getHost();
+            if (host==null) return "";
+            host = host.toLowerCase();
+            return host.startsWith("www.") ? host.substring(4) : host;
+        }catch(IllegalArgumentException ex){
+            return "";
+        }
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public VideoDownloaderCommand getCommand() {
+        return command;
+    }
+
+    public String getUrl() {
+        return command.getUrl();
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public DownloadPriority getPriority() {
+        return command.getPriority();
+    }
+
+    /**
+     * @return video title if metadata is known or url
+     */
+    public String getTitle() {
+        VideoMetadata m = metadata;
+        return m!=null && !m.getTitle().isEmpty() ? m.getTitle() : getUrl();
+    }
+
+    /**
+     * @return estimated download size or -1 if unknown
+     */
+    public long getEstimatedSize() {
+        VideoMetadata m = metadata;
+        return m!=null ? m.estimateSize(command.getSourceFormat()) : -1;
+    }
+
+    /**
+     * @return extracted metadata or null if unknown
+     */
+    public VideoMetadata getMetadata() {
+        return metadata;
+    }
+
+    void setMetadata(VideoMetadata metadata) {
+        this.metadata = metadata;
+    }
+
+    public DownloadJobState getState() {
+        return state;
+    }
+
+    void setState(DownloadJobState state) {
+        this.state = state;
+    }
+
+    public float getPercent() {
+        return percent;
+    }
+
+    /**
+     * Take values of the last progress line.
+     * @param progress
+     */
+    void setProgress(DownloadProgress progress) {
+        stages.onProgress(progress);
+        this.percent = stages.getPercent();
+        this.speed = progress.getSpeed();
+        this.eta = stages.getEta();
+        this.downloadedBytes = progress.getDownloadedBytes();
+        this.progressTime = System.nanoTime();
+    }
+
+    /**
+     * Feed a console line to the stage tracker.
+     * @param line
+     */
+    void onLine(String line) {
+        stages.onLine(line);
+        this.percent = stages.getPercent();
+    }
+
+    /**
+     * Start progress tracking of a new attempt.
+     */
+    void resetProgress() {
+        stages.reset(getEstimatedSize());
+        this.percent = 0;
+        this.speed = -1;
+        this.eta = -1;
+        this.downloadedBytes = -1;
+    }
+
+    /**
+     * Job is complete.
+     */
+    void finishProgress() {
+        stages.finish();
+        this.percent = 100;
+        this.eta = 0;
+    }
+
+    /**
+     * @return current stage or null if not running
+     */
+    public DownloadStage getStage() {
+        return state.isRunning() ? stages.getStage() : null;
+    }
+
+    public DownloadStageTracker getStages() {
+        return stages;
+    }
+
+    /**
+     * @return last known speed in bytes per second or -1
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return last known overall seconds left or -1
+     */
+    public int getEta() {
+        return eta;
+    }
+
+    /**
+     * @return bytes downloaded of the current file or -1
+     */
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last progress line or 0 if there was none, for stall detection
+     */
+    public long getProgressTime() {
+        return progressTime;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    void setAttempt(int attempt) {
+        this.attempt = attempt;
+    }
+
+    /**
+     * @return finished attempts history
+     */
+    public List<DownloadAttempt> getAttempts(){
+        VideoDownloader vd = downloader;
+        return vd!=null ? vd.getAttempts() : List.of();
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + getUrl();
+    }
+
+}
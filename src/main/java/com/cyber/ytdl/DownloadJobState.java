@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ *
+ * @author Kirill Bereznyakov
+ */
+public enum DownloadJobState {
+    QUEUED("queued"),
+    RUNNING("running"),
+    RETRYING("retrying"),
+    PAUSED("paused"),
+    DONE("done"),
+    FAILED("failed"),
+    CANCELLED("cancelled");
+
+    private final String title;
+
+    DownloadJobState(String title){
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+
+    /**
+     * @return true if the job is not finished: holds or waits for a worker slot, or is paused
+     */
+    public boolean isActive(){
+        return this==QUEUED || this==RUNNING || this==RETRYING || this==PAUSED;
+    }
+
+    /**
+     * @return true if the job holds a worker slot
+     */
+    public boolean isRunning(){
+        return this==RUNNING || this==RETRYING;
+    }
+
+}
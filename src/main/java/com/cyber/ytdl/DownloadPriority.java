@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ * Priority class of a download task, used by {@link SchedulingPolicy#PRIORITY}.
+ *
+ * @author Kirill Bereznyakov
+ */
+public enum DownloadPriority {
+    LOW("low"),
+    NORMAL("normal"),
+    HIGH("high");
+
+    private final String title;
+
+    DownloadPriority(String title){
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+
+    /**
+     * @param str priority title
+     * @param defaultValue
+     * @return priority or default value if the string is unknown
+     */
+    public static DownloadPriority parse(String str, DownloadPriority defaultValue){
+        for(DownloadPriority priority: values()){
+            if (priority.title.equalsIgnoreCase(str)) return priority;
+        }
+        return defaultValue;
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.cyber.ytdl;
+
+import com.cyber.util.Units;
+import java.nio.charset.Charset;
+
+/**
+ * Reusable download progress holder filled by {@link DownloadProgressScanner}.
+ * Unknown values are -1. The source line is kept as a slice of the reader buffer
+ * and decoded only by {@link #toString()}, so it's valid only inside the progress
+ * callback, use {@link #copyFrom(DownloadProgress)} to keep it.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadProgress {
+
+    float percent;
+    long downloadedBytes;
+    long totalBytes;
+    float speed;
+    int eta;
+    int fragmentIndex;
+    int fragmentCount;
+
+    byte[] ownBuf;
+    byte[] lineBuf;
+    int lineOffset;
+    int lineLength;
+    Charset charset = Charset.defaultCharset();
+
+    public float getPercent() {
+        return percent;
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    /**
+     * @return total (or estimated) size in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return bytes per second
+     */
+    public float getSpeed() {
+        return speed;
+    }
+
+    /**
+     * @return seconds left
+     */
+    public int getEta() {
+        return eta;
+    }
+
+    public int getFragmentIndex() {
+        return fragmentIndex;
+    }
+
+    public int getFragmentCount() {
+        return fragmentCount;
+    }
+
+    void reset(){
+        percent = 0;
+        downloadedBytes = -1;
+        totalBytes = -1;
+        speed = -1;
+        eta = -1;
+        fragmentIndex = -1;
+        fragmentCount = -1;
+    }
+
+    /**
+     * Copy all values, the source line is copied into own buffer.
+     * @param other
+     */
+    public void copyFrom(DownloadProgress other){
+        percent = other.percent;
+        downloadedBytes = other.downloadedBytes;
+        totalBytes = other.totalBytes;
+        speed = other.speed;
+        eta = other.eta;
+        fragmentIndex = other.fragmentIndex;
+        fragmentCount = other.fragmentCount;
+        charset = other.charset;
+        if (other.lineBuf==null){
+            lineBuf = null;
+            return;
+        }
+        if (ownBuf==null || ownBuf.length<other.lineLength) ownBuf = new byte[Math.max(other.lineLength, 128)];
+        System.arraycopy(other.lineBuf, other.lineOffset, ownBuf, 0, other.lineLength);
+        lineBuf = ownBuf;
+        lineOffset = 0;
+        lineLength = other.lineLength;
+    }
+
+    void setLine(byte[] buf, int offset, int length, Charset charset){
+        this.lineBuf = buf;
+        this.lineOffset = offset;
+        this.lineLength = length;
+        this.charset = charset;
+    }
+
+    /**
+     * @return progress text like {@code 42.5% of 100.5 MiB at 1.2 MiB/s ETA 01:20 frag 3/10}
+     */
+    public String describe(){
+        StringBuilder sb = new StringBuilder(64);
+        sb.append(String.format("%.1f%%", percent));
+        if (totalBytes>0) sb.append(" of ").append(Units.formatSize(totalBytes));
+        if (speed>=0) sb.append(" at ").append(Units.formatSpeed(speed));
+        if (eta>=0) sb.append(" ETA ").append(Units.formatDuration(eta));
+        if (fragmentCount>0) sb.append(" frag ").append(fragmentIndex).append('/').append(fragmentCount);
+        return sb.toString();
+    }
+
+    /**
+     * @return source console line
+     */
+    @Override
+    public String toString() {
+        return lineBuf==null ? "" : new String(lineBuf, lineOffset, lineLength, charset);
+    }
+
+}
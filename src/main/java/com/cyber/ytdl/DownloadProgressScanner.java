@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.cyber.ytdl;
+
+/**
+ * Hand-written scanner for yt-dlp progress lines. Machine-readable lines printed
+ * with {@link #PROGRESS_TEMPLATE} are preferred:
+ * {@code [progress] 1048576 10485760 NA 524288.5 18 NA NA},
+ * human-readable lines like {@code [download]  42.5% of ~ 100.50MiB at 1.20MiB/s ETA 01:20}
+ * are parsed as a fallback. Works on raw bytes and doesn't allocate.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadProgressScanner {
+
+    /**
+     * yt-dlp --progress-template value: downloaded, total, total estimate, speed, eta,
+     * fragment index, fragment count. Unknown values are printed as NA.
+     */
+    public static final String PROGRESS_TEMPLATE = "download:[progress]"
+        + " %(progress.downloaded_bytes)s %(progress.total_bytes)s %(progress.total_bytes_estimate)s"
+        + " %(progress.speed)s %(progress.eta)s %(progress.fragment_index)s %(progress.fragment_count)s";
+
+    private static final byte[] PROGRESS_TAG = "[progress]".getBytes();
+    private static final byte[] DOWNLOAD_TAG = "[download]".getBytes();
+    private static final byte[] OF_TAG = "of".getBytes();
+    private static final byte[] AT_TAG = "at".getBytes();
+    private static final byte[] ETA_TAG = "ETA".getBytes();
+    private static final byte[] NA_TAG = "NA".getBytes();
+
+    private int pos;
+    private int end;
+    private byte[] buf;
+
+    /**
+     * Scan line and fill progress fields.
+     * @param buf line buffer
+     * @param offset line start
+     * @param length line length
+     * @param out progress holder, changed only if line is recognized
+     * @return true if line is a download progress line
+     */
+    public boolean scan(byte[] buf, int offset, int length, DownloadProgress out){
+        this.buf = buf;
+        this.pos = offset;
+        this.end = offset + length;
+
+        if (skip(PROGRESS_TAG)) return scanTemplate(out);
+        if (!skip(DOWNLOAD_TAG) || skipSpaces()==0) return false;
+
+        double percent = parseNumber();
+        if (Double.isNaN(percent) || !skip('%')) return false;
+
+        out.reset();
+        out.percent = (float)percent;
+
+        skipSpaces();
+        if (skip(OF_TAG)){
+            skipSpaces();
+            if (skip('~')) skipSpaces();
+            double size = parseNumber();
+            if (!Double.isNaN(size)){
+                out.totalBytes = (long)(size * parseUnitMultiplier());
+                out.downloadedBytes = (long)(out.totalBytes * percent / 100);
+            }
+            skipSpaces();
+        }
+        if (skip(AT_TAG)){
+            skipSpaces();
+            double speed = parseNumber();
+            if (!Double.isNaN(speed)) out.speed = (float)(speed * parseUnitMultiplier());
+            skip('/');
+            skip('s');
+            skipSpaces();
+        }
+        if (skip(ETA_TAG)){
+            skipSpaces();
+            out.eta = parseClock();
+        }
+        return true;
+    }
+
+    /**
+     * Parse fields of {@link #PROGRESS_TEMPLATE} line after the tag.
+     */
+    private boolean scanTemplate(DownloadProgress out){
+        out.reset();
+        out.downloadedBytes = (long)nextField();
+        long total = (long)nextField();
+        long estimate = (long)nextField();
+        out.totalBytes = total>0 ? total : estimate;
+        out.speed = (float)nextField();
+        out.eta = (int)nextField();
+        out.fragmentIndex = (int)nextField();
+        out.fragmentCount = (int)nextField();
+        if (out.downloadedBytes<0) return false;
+
+        if (out.totalBytes>0){
+            out.percent = Math.min(100f, 100f * out.downloadedBytes / out.totalBytes);
+        }else if (out.fragmentIndex>0 && out.fragmentCount>0){
+            out.percent = Math.min(100f, 100f * out.fragmentIndex / out.fragmentCount);
+        }
+        return true;
+    }
+
+    /**
+     * @return next space separated number or -1 for NA or malformed value
+     */
+    private double nextField(){
+        skipSpaces();
+        if (skip(NA_TAG)) return -1;
+        double value = parseNumber();
+        // skip anything unexpected up to the next field
+        while(pos<end && buf[pos]!=' ') pos++;
+        return Double.isNaN(value) ? -1 : value;
+    }
+
+    /**
+     * Parse time like 01:20 or 1:02:03
+     * @return seconds or -1 if there is no time at current position
+     */
+    private int parseClock(){
+        int seconds = -1;
+        do{
+            double part = parseNumber();
+            if (Double.isNaN(part)) return seconds;
+            seconds = Math.max(seconds, 0)*60 + (int)part;
+        }while(skip(':'));
+        return seconds;
+    }
+
+    private boolean skip(byte[] tag){
+        if (end-pos < tag.length) return false;
+        for(int i=0; i<tag.length; i++){
+            if (buf[pos+i]!=tag[i]) return false;
+        }
+        pos += tag.length;
+        return true;
+    }
+
+    private boolean skip(char ch){
+        if (pos<end && buf[pos]==ch){
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    private int skipSpaces(){
+        int start = pos;
+        while(pos<end && buf[pos]==' ') pos++;
+        return pos-start;
+    }
+
+    /**
+     * Parse unsigned decimal number like 12 or 12.34
+     * @return number or NaN if there is no digits at current position
+     */
+    private double parseNumber(){
+        long mantissa = 0;
+        long divider = 1;
+        boolean fraction = false;
+        int start = pos;
+
+        while(pos<end){
+            byte b = buf[pos];
+            if (b>='0' && b<='9'){
+                mantissa = mantissa*10 + (b-'0');
+                if (fraction) divider *= 10;
+            }else if (b=='.' && !fraction){
+                fraction = true;
+            }else{
+                break;
+            }
+            pos++;
+        }
+        return pos==start ? Double.NaN : (double)mantissa/divider;
+    }
+
+    /**
+     * Parse size unit like B, KiB, MiB, GiB, TiB (or decimal KB, MB...)
+     * @return bytes multiplier
+     */
+    private long parseUnitMultiplier(){
+        if (pos>=end) return 1;
+        long base = 1000;
+        int exp;
+        switch(buf[pos]){
+            case 'K': exp = 1; break;
+            case 'M': exp = 2; break;
+            case 'G': exp = 3; break;
+            case 'T': exp = 4; break;
+            default: return 1;
+        }
+        pos++;
+        if (skip('i')) base = 1024;
+        skip('B');
+
+        long mul = 1;
+        for(int i=0; i<exp; i++) mul *= base;
+        return mul;
+    }
+
+}
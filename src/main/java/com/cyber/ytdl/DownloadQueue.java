@@ -0,0 +1,903 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import com.cyber.util.ApplicationProperties;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Download jobs queue. Runs up to maxParallel jobs at once, but not more than
+ * maxPerHost jobs for the same source host. Every running job has its own
+ * {@link VideoDownloader} process.
+ * <p>
+ * With metadata cache in two phase mode, info JSON extraction for queued jobs
+ * runs on the cache extraction pool and a job takes a download slot only when
+ * its extraction is finished, so extraction of the next jobs overlaps current
+ * downloads. Download stage loads the saved info JSON instead of the URL.
+ * <p>
+ * Paused jobs keep partial files and metadata but take no slot until resumed.
+ * <p>
+ * Pending jobs are started in {@link SchedulingPolicy} order (FIFO by default).
+ * <p>
+ * With adaptive concurrency the limits are moved by {@link ConcurrencyController}
+ * according to throughput and load errors every controller interval, maxParallel and
+ * maxPerHost are upper bounds.
+ * <p>
+ * In batch mode (batch size &gt; 1) queued single video jobs of the same host with
+ * identical options are grouped and downloaded by one {@link BatchDownloader}
+ * process taking one worker slot. Failed batch items are re-queued as single jobs.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadQueue {
+
+    public static final int DEFAULT_MAX_PARALLEL = 3;
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+
+    private int maxParallel = DEFAULT_MAX_PARALLEL;
+    private int maxPerHost = DEFAULT_MAX_PER_HOST;
+
+    private final List<DownloadJob> jobs = new ArrayList<>();
+    private PendingJobs pending = new PendingJobs(SchedulingPolicy.FIFO);
+    private final Set<DownloadJob> runningJobs = new HashSet<>();
+    private final Map<String,Integer> runningPerHost = new HashMap<>();
+    private int running = 0;
+    private boolean shutdown = false;
+    private JobJournal journal;
+    private RetryScheduler retryScheduler = RetryScheduler.getDefault();
+    private MetadataCache metadataCache;
+    private boolean twoPhase = true;
+    private int batchSize = 1;
+    private PartialFilesPolicy cancelCleanup = PartialFilesPolicy.ALL;
+    private volatile ConcurrencyController concurrency;
+
+    private Consumer<DownloadJob> jobStateHandler = job -> {};
+    private BiConsumer<DownloadJob,String> jobMessageHandler = (job, line) -> {};
+    private BiConsumer<DownloadJob,DownloadProgress> jobProgressHandler = (job, progress) -> {};
+    private final DownloadEventStream events = new DownloadEventStream();
+
+    public DownloadQueue(){
+
+    }
+
+    public DownloadQueue(int maxParallel, int maxPerHost){
+        setMaxParallel(maxParallel);
+        setMaxPerHost(maxPerHost);
+    }
+
+    /**
+     * Add new job to the queue and start it if there is a free worker slot.
+     * @param vdc download command
+     * @return queued job
+     */
+    public DownloadJob submit(VideoDownloaderCommand vdc){
+        DownloadJob job = new DownloadJob(vdc);
+        if (journal!=null) journal.submitted(job);
+        enqueue(job);
+        return job;
+    }
+
+    /**
+     * Add unfinished job restored from journal. Partially downloaded files are continued.
+     * @param id journaled job id
+     * @param vdc download command
+     * @return queued job
+     * @see JobJournal#recover()
+     */
+    public DownloadJob resume(long id, VideoDownloaderCommand vdc){
+        return resume(id, vdc, false);
+    }
+
+    /**
+     * Add unfinished job restored from journal. Partially downloaded files are continued.
+     * @param id journaled job id
+     * @param vdc download command
+     * @param paused add the job paused, it waits for {@link #resume(DownloadJob)}
+     * @return queued or paused job
+     * @see JobJournal#isPaused(long)
+     */
+    public DownloadJob resume(long id, VideoDownloaderCommand vdc, boolean paused){
+        vdc.add("--continue");
+        DownloadJob job = new DownloadJob(id, vdc);
+        if (paused) job.setState(DownloadJobState.PAUSED);
+        enqueue(job);
+        return job;
+    }
+
+    protected void enqueue(DownloadJob job){
+        boolean paused = job.getState()==DownloadJobState.PAUSED;
+        if (metadataCache!=null){
+            // cached info JSON is read and parsed on the cache pool, not on the caller (EDT) thread
+            if (metadataCache.getInfoFile(job.getCommand())!=null){
+                metadataCache.getAsync(job.getCommand()).thenAccept(metadata -> {
+                    if (metadata==null) return;
+                    job.setMetadata(metadata);
+                    // the schedule key may depend on metadata (shortest first)
+                    synchronized(this){
+                        pending.reorder(job);
+                    }
+                    jobStateHandler.accept(job);
+                    dispatch();
+                });
+            }else if (twoPhase && !paused && !isBatchable(job)){
+                extract(job);
+            }
+        }
+        synchronized(this){
+            jobs.add(job);
+            if (!paused) pending.add(job);
+        }
+        fireStateChange(job);
+        dispatch();
+    }
+
+    /**
+     * Cancel queued or running job. Running process tree is destroyed and
+     * partial files are removed by the cancel cleanup policy.
+     * @param job
+     */
+    public void cancel(DownloadJob job){
+        synchronized(this){
+            DownloadJobState state = job.getState();
+            if (!state.isActive()) return;
+
+            if (state.isRunning() && job.batch!=null){
+                // other batch jobs are queued again, this one is taken out of the queue
+                cancelBatch(job.batch);
+                pending.remove(job);
+            }else if (state.isRunning()){
+                job.downloader.destroy(cancelCleanup);
+                releaseSlot(job);
+            }else{
+                pending.remove(job);
+                cancelExtraction(job);
+            }
+            job.setState(DownloadJobState.CANCELLED);
+        }
+        fireStateChange(job);
+        dispatch();
+    }
+
+    /**
+     * Pause queued or running job. Running process tree is stopped with partial
+     * files kept and the worker slot is released for other jobs.
+     * @param job
+     * @return true if the job is paused
+     */
+    public boolean pause(DownloadJob job){
+        synchronized(this){
+            DownloadJobState state = job.getState();
+            if (!state.isActive() || state==DownloadJobState.PAUSED) return false;
+
+            if (state.isRunning() && job.batch!=null){
+                // other batch jobs are queued again, this one is taken out of the queue below
+                cancelBatch(job.batch);
+                pending.remove(job);
+            }else if (state.isRunning()){
+                awaitTermination(job, job.downloader.destroy(PartialFilesPolicy.KEEP));
+                releaseSlot(job);
+            }else{
+                pending.remove(job);
+                cancelExtraction(job);
+            }
+            job.batchable = false;
+            job.setState(DownloadJobState.PAUSED);
+        }
+        fireStateChange(job);
+        dispatch();
+        return true;
+    }
+
+    /**
+     * Queue paused job again. The download continues partial files and uses
+     * saved info JSON from metadata cache if it's still there, so neither
+     * downloaded bytes nor extraction are repeated.
+     * @param job
+     * @return true if the job is queued
+     */
+    public boolean resume(DownloadJob job){
+        synchronized(this){
+            if (job.getState()!=DownloadJobState.PAUSED) return false;
+            job.getCommand().add("--continue");
+            job.setState(DownloadJobState.QUEUED);
+            // extraction cancelled by pause() is started again
+            if (twoPhase && metadataCache!=null && job.getMetadata()==null && job.extraction!=null && job.extraction.isCancelled()) extract(job);
+            pending.add(job);
+        }
+        fireStateChange(job);
+        events.publish(new DownloadEvent.Resumed(job));
+        dispatch();
+        return true;
+    }
+
+    public void cancelAll(){
+        List<DownloadJob> active;
+        synchronized(this){
+            // cancel queued jobs first so they don't take released slots
+            pending.clear();
+            active = new ArrayList<>(jobs);
+        }
+        active.forEach(this::cancel);
+    }
+
+    /**
+     * Start extraction stage. Failed extraction isn't fatal: the job will be
+     * downloaded by URL in a single phase.
+     * @param job
+     */
+    protected void extract(DownloadJob job){
+        CompletableFuture<VideoMetadata> extraction = metadataCache.fetchAsync(job.getCommand());
+        job.extraction = extraction;
+        extraction.whenComplete((metadata, ex) -> {
+            // job is cancelled or paused
+            if (extraction.isCancelled()) return;
+            // before the job is ordered by its schedule key
+            if (metadata!=null) job.setMetadata(metadata);
+            synchronized(this){
+                pending.ready(job);
+            }
+            if (metadata!=null){
+                jobStateHandler.accept(job);
+            }else{
+                jobMessageHandler.accept(job, "extraction stage error: " + (ex.getCause()!=null ? ex.getCause().getMessage() : ex.getMessage()));
+            }
+            dispatch();
+        });
+    }
+
+    /**
+     * Stop extraction of the job taken out of the queue. The extraction process
+     * is destroyed if no other job waits for the same URL.
+     * @param job
+     */
+    private void cancelExtraction(DownloadJob job){
+        if (job.extraction!=null && !job.extraction.isDone()) job.extraction.cancel(false);
+    }
+
+    /**
+     * Start pending jobs while there are free worker slots. With preemptive policy
+     * a ready job of higher priority takes the slot of a running lower priority job,
+     * which is stopped like paused (partial files kept) and returned to the queue.
+     */
+    protected void dispatch(){
+        // a job preempted and dispatched again in this pass is started once with its new downloader
+        Set<DownloadJob> started = new LinkedHashSet<>();
+        List<BatchDownloader> startedBatches = new ArrayList<>();
+        List<DownloadJob> preempted = new ArrayList<>();
+
+        synchronized(this){
+            if (shutdown) return;
+            while(true){
+                DownloadJob job;
+                while(running<getLimit() && (job=pending.next(this::isHostAvailable))!=null){
+                    pending.take(job);
+                    List<DownloadJob> group = isBatchable(job) ? collectBatch(job) : List.of(job);
+
+                    running++;
+                    runningPerHost.merge(job.getHost(), 1, Integer::sum);
+                    for(DownloadJob j: group){
+                        j.setState(DownloadJobState.RUNNING);
+                        j.setAttempt(1);
+                    }
+                    // downloaders are assigned under the lock, so cancel, pause or preemption
+                    // before start() destroy the right one
+                    if (group.size()>1){
+                        BatchDownloader batch = new BatchDownloader(group);
+                        group.forEach(j -> j.batch = batch);
+                        startedBatches.add(batch);
+                    }else{
+                        job.downloader = newDownloader();
+                        runningJobs.add(job);
+                        started.add(job);
+                    }
+                }
+
+                if (!pending.getPolicy().isPreemptive() || running<getLimit()) break;
+                DownloadJob best = pending.next(host -> true);
+                DownloadJob victim = best!=null ? findPreemptionVictim(best) : null;
+                if (victim==null) break;
+                preempt(victim);
+                preempted.add(victim);
+            }
+            pending.dispatched();
+        }
+
+        preempted.forEach(job -> {
+            fireStateChange(job);
+            fireMessage(job, "preempted by higher priority job, will continue later");
+        });
+        startedBatches.forEach(this::startBatch);
+        started.forEach(this::start);
+    }
+
+    private boolean isHostAvailable(String host){
+        return runningPerHost.getOrDefault(host, 0) < getHostLimit(host);
+    }
+
+    private int getLimit(){
+        ConcurrencyController c = concurrency;
+        return c!=null ? c.getLimit(maxParallel) : maxParallel;
+    }
+
+    private int getHostLimit(String host){
+        ConcurrencyController c = concurrency;
+        return c!=null ? c.getHostLimit(host, maxPerHost) : maxPerHost;
+    }
+
+    /**
+     * @param best first ready job
+     * @return running single job of the lowest priority below the job's one, it must be
+     * of the same host if the host is at limit; null if there is no such job
+     */
+    private DownloadJob findPreemptionVictim(DownloadJob best){
+        boolean sameHost = !isHostAvailable(best.getHost());
+        DownloadJob victim = null;
+        for(DownloadJob job: runningJobs){
+            if (job.getPriority().compareTo(best.getPriority())>=0) continue;
+            if (sameHost && !job.getHost().equals(best.getHost())) continue;
+            if (victim==null || job.getPriority().compareTo(victim.getPriority())<0) victim = job;
+        }
+        return victim;
+    }
+
+    /**
+     * Stop running job keeping partial files and put it first among jobs of its priority.
+     * Called with queue lock held.
+     */
+    private void preempt(DownloadJob job){
+        awaitTermination(job, job.downloader.destroy(PartialFilesPolicy.KEEP));
+        releaseSlot(job);
+        job.getCommand().add("--continue");
+        job.setState(DownloadJobState.QUEUED);
+        pending.addFirst(job);
+    }
+
+    private boolean isBatchable(DownloadJob job){
+        VideoDownloaderCommand vdc = job.getCommand();
+        return batchSize>1 && job.batchable && !vdc.isPlaylistAllowed() && vdc.getInfoJsonPath().isEmpty();
+    }
+
+    /**
+     * Remove from pending and return jobs which can be downloaded in one batch with the first job.
+     */
+    private List<DownloadJob> collectBatch(DownloadJob first){
+        List<DownloadJob> group = new ArrayList<>();
+        Set<String> urls = new HashSet<>();
+        String batchKey = first.getCommand().getBatchKey();
+
+        group.add(first);
+        urls.add(MetadataCache.canonicalUrl(first.getUrl()));
+
+        for(DownloadJob job: pending.ofHost(first.getHost())){
+            if (group.size()>=batchSize) break;
+            if (!isBatchable(job)) continue;
+            if (!batchKey.equals(job.getCommand().getBatchKey())) continue;
+            if (!urls.add(MetadataCache.canonicalUrl(job.getUrl()))) continue;
+            group.add(job);
+        }
+        group.subList(1, group.size()).forEach(pending::remove);
+        return group;
+    }
+
+    /**
+     * @return true if no job of the batch was cancelled, paused or preempted since dispatch
+     */
+    private synchronized boolean isCurrent(BatchDownloader batch){
+        return !shutdown && batch.getJobs().stream().allMatch(job -> job.batch==batch && job.getState().isRunning());
+    }
+
+    /**
+     * @return true if the job wasn't cancelled, paused or preempted since dispatch
+     */
+    private synchronized boolean isCurrent(DownloadJob job, VideoDownloader downloader){
+        return !shutdown && job.downloader==downloader && job.getState().isRunning();
+    }
+
+    protected void startBatch(BatchDownloader batch){
+        if (!isCurrent(batch)) return;
+        List<DownloadJob> group = batch.getJobs();
+
+        batch.onItemStart(job -> {
+            job.resetProgress();
+            job.reportedBytes = -1;
+        });
+        batch.onItemMessage(this::fireMessage);
+        batch.onItemProgress(this::fireProgress);
+        batch.onItemFinish((job, failure) -> finishBatchItem(batch, job, failure));
+        batch.onBatchFinish(unprocessed -> finishBatch(batch, unprocessed));
+
+        group.forEach(this::fireStateChange);
+        synchronized(this){
+            if (isCurrent(batch)) batch.execute();
+        }
+    }
+
+    protected void finishBatchItem(BatchDownloader batch, DownloadJob job, FailureClass failure){
+        ConcurrencyController c = concurrency;
+        if (c!=null && failure!=null) c.failure(job.getHost(), failure);
+        synchronized(this){
+            // the job was returned to the queue by cancelBatch() and may run again
+            if (job.batch!=batch || !job.getState().isRunning()) return;
+            job.batch = null;
+            if (failure==null){
+                job.finishProgress();
+                job.setState(DownloadJobState.DONE);
+            }else if (!failure.isRetryable()){
+                job.setState(DownloadJobState.FAILED);
+            }else{
+                // retry as a single job with normal retry policy
+                job.batchable = false;
+                job.setState(DownloadJobState.QUEUED);
+                pending.addFirst(job);
+            }
+        }
+        fireStateChange(job);
+        dispatch();
+    }
+
+    protected void finishBatch(BatchDownloader batch, List<DownloadJob> unprocessed){
+        synchronized(this){
+            // cancelBatch() has already returned the jobs to the queue
+            if (batch.released) return;
+            releaseBatchSlot(batch);
+            // unprocessed jobs are not batched again, so a batch which can't run doesn't loop
+            unprocessed.forEach(job -> job.batchable = false);
+            requeue(unprocessed);
+        }
+        unprocessed.forEach(this::fireStateChange);
+        dispatch();
+    }
+
+    /**
+     * Destroy batch process, running batch jobs are returned to the queue.
+     * Called with queue lock held.
+     */
+    private void cancelBatch(BatchDownloader batch){
+        CompletableFuture<Void> terminated = batch.destroy();
+        releaseBatchSlot(batch);
+        List<DownloadJob> interrupted = new ArrayList<>();
+        for(DownloadJob job: batch.getJobs()){
+            if (!job.getState().isRunning()) continue;
+            awaitTermination(job, terminated);
+            interrupted.add(job);
+        }
+        requeue(interrupted);
+    }
+
+    /**
+     * Job stopped with partial files kept waits aside in the queue until its process
+     * tree has exited, the tree may be in its destroy grace period and a new process
+     * would write the same partial files. Called with queue lock held.
+     */
+    private void awaitTermination(DownloadJob job, CompletableFuture<Void> terminated){
+        job.terminated = terminated;
+        if (terminated.isDone()) return;
+        terminated.thenRunAsync(() -> {
+            synchronized(this){
+                pending.ready(job);
+            }
+            dispatch();
+        });
+    }
+
+    /**
+     * Free the slot of the batch once: its exit handler may pass the interrupted
+     * check before cancelBatch(). Called with queue lock held.
+     */
+    private void releaseBatchSlot(BatchDownloader batch){
+        if (batch.released) return;
+        batch.released = true;
+        releaseSlot(batch.getJobs().get(0));
+    }
+
+    private void requeue(List<DownloadJob> list){
+        for(int i=list.size()-1; i>=0; i--){
+            DownloadJob job = list.get(i);
+            if (!job.getState().isRunning()) continue;
+            job.batch = null;
+            job.setState(DownloadJobState.QUEUED);
+            pending.addFirst(job);
+        }
+    }
+
+    private VideoDownloader newDownloader(){
+        VideoDownloader downloader = new VideoDownloader();
+        downloader.setRetryScheduler(retryScheduler);
+        if (twoPhase) downloader.setMetadataCache(metadataCache);
+        return downloader;
+    }
+
+    /**
+     * Start downloader assigned to the job by {@link #dispatch()}.
+     * @param job
+     */
+    protected void start(DownloadJob job){
+        VideoDownloader downloader = job.downloader;
+        if (!isCurrent(job, downloader)) return;
+
+        downloader.onMessage(line -> fireMessage(job, line));
+        downloader.onDownloadProgress(progress -> fireProgress(job, progress));
+        downloader.onFailure(failure -> {
+            ConcurrencyController c = concurrency;
+            if (c!=null) c.failure(job.getHost(), failure);
+        });
+        downloader.onRetry(attempt -> {
+            job.resetProgress();
+            job.setAttempt(attempt);
+            job.setState(DownloadJobState.RETRYING);
+            fireStateChange(job);
+            events.publish(new DownloadEvent.Retry(job, attempt));
+        });
+        downloader.onComplete(() -> finish(job, DownloadJobState.DONE));
+        downloader.onError(() -> finish(job, DownloadJobState.FAILED));
+
+        job.resetProgress();
+        job.reportedBytes = -1;
+        fireStateChange(job);
+        synchronized(this){
+            if (isCurrent(job, downloader)) downloader.execute(job.getCommand());
+        }
+    }
+
+    protected void finish(DownloadJob job, DownloadJobState state){
+        synchronized(this){
+            if (!job.getState().isRunning()) return;
+            releaseSlot(job);
+            if (state==DownloadJobState.DONE) job.finishProgress();
+            job.setState(state);
+        }
+        fireStateChange(job);
+        dispatch();
+    }
+
+    protected void fireStateChange(DownloadJob job){
+        if (journal!=null) journal.stateChanged(job);
+        jobStateHandler.accept(job);
+        if (!events.hasSubscribers()) return;
+        switch(job.getState()){
+            case RUNNING: events.publish(new DownloadEvent.Started(job)); break;
+            case DONE: events.publish(new DownloadEvent.Completed(job)); break;
+            case FAILED: events.publish(new DownloadEvent.Failed(job)); break;
+            case CANCELLED: events.publish(new DownloadEvent.Cancelled(job)); break;
+            case PAUSED: events.publish(new DownloadEvent.Paused(job)); break;
+            default: break;
+        }
+    }
+
+    protected void fireMessage(DownloadJob job, String line){
+        DownloadStage stage = job.getStages().getStage();
+        job.onLine(line);
+        jobMessageHandler.accept(job, line);
+        if (!events.hasSubscribers()) return;
+        events.publish(new DownloadEvent.Output(job, line));
+        fireStageChange(job, stage);
+    }
+
+    protected void fireProgress(DownloadJob job, DownloadProgress progress){
+        DownloadStage stage = job.getStages().getStage();
+        job.setProgress(progress);
+        ConcurrencyController c = concurrency;
+        if (c!=null){
+            c.record(job, progress.getDownloadedBytes());
+        }
+        jobProgressHandler.accept(job, progress);
+        if (!events.hasSubscribers()) return;
+        fireStageChange(job, stage);
+        events.publish(new DownloadEvent.Progress(job, progress));
+    }
+
+    /**
+     * Move the limits every controller interval on the retry scheduler thread, also
+     * while no progress is reported (extraction, merging, stalled downloads).
+     */
+    private void scheduleConcurrencyUpdate(ConcurrencyController c){
+        retryScheduler.schedule(() -> {
+            synchronized(this){
+                if (shutdown || concurrency!=c) return;
+            }
+            try{
+                adjustConcurrency(c);
+            }finally{
+                scheduleConcurrencyUpdate(c);
+            }
+        }, c.getInterval());
+    }
+
+    /**
+     * Let the controller move the limits, start jobs if they were raised.
+     */
+    private void adjustConcurrency(ConcurrencyController c){
+        boolean increased;
+        synchronized(this){
+            increased = c.update(maxParallel, maxPerHost, running, runningPerHost,
+                pending.next(this::isHostAvailable)!=null,
+                host -> pending.ofHost(host).iterator().hasNext());
+        }
+        if (increased) dispatch();
+    }
+
+    private void fireStageChange(DownloadJob job, DownloadStage previous){
+        DownloadStage stage = job.getStages().getStage();
+        if (stage!=previous && stage!=null) events.publish(new DownloadEvent.StageChanged(job, stage));
+    }
+
+    /**
+     * Stop all processes without changing jobs state, so journaled jobs
+     * are resumed on the next start. The queue doesn't start jobs after that.
+     */
+    public void shutdown(){
+        List<DownloadJob> active;
+        synchronized(this){
+            shutdown = true;
+            active = new ArrayList<>(jobs);
+        }
+        active.stream()
+            .filter(job -> job.getState().isRunning())
+            .forEach(job -> {
+                BatchDownloader batch = job.batch;
+                if (batch!=null){
+                    batch.destroy();
+                }else{
+                    job.downloader.destroy(PartialFilesPolicy.KEEP);
+                }
+            });
+        events.close();
+    }
+
+    private void releaseSlot(DownloadJob job){
+        runningJobs.remove(job);
+        running--;
+        runningPerHost.computeIfPresent(job.getHost(), (host, count) -> count>1 ? count-1 : null);
+    }
+
+    /**
+     * @return true if there are queued or running jobs
+     */
+    public synchronized boolean isBusy(){
+        return running>0 || !pending.isEmpty();
+    }
+
+    public synchronized List<DownloadJob> getJobs(){
+        return new ArrayList<>(jobs);
+    }
+
+    public synchronized int getRunningCount(){
+        return running;
+    }
+
+    /**
+     * @return summary speed of running jobs in bytes per second
+     */
+    public double getThroughput(){
+        return getJobs().stream()
+            .filter(job -> job.getState().isRunning())
+            .mapToDouble(DownloadJob::getSpeed)
+            .filter(speed -> speed>0)
+            .sum();
+    }
+
+    public synchronized int getPendingCount(){
+        return pending.size();
+    }
+
+    /**
+     * Remove finished jobs from the jobs list.
+     */
+    public synchronized void clearFinished(){
+        jobs.removeIf(job -> !job.getState().isActive());
+    }
+
+    public synchronized int getMaxParallel() {
+        return maxParallel;
+    }
+
+    public void setMaxParallel(int maxParallel) {
+        synchronized(this){
+            this.maxParallel = Math.max(1, maxParallel);
+        }
+        dispatch();
+    }
+
+    public synchronized int getMaxPerHost() {
+        return maxPerHost;
+    }
+
+    public void setMaxPerHost(int maxPerHost) {
+        synchronized(this){
+            this.maxPerHost = Math.max(1, maxPerHost);
+        }
+        dispatch();
+    }
+
+    /**
+     * Set journal for submissions and state changes.
+     * @param journal
+     */
+    public void setJournal(JobJournal journal){
+        this.journal = journal;
+    }
+
+    /**
+     * Set metadata cache to fill known jobs metadata.
+     * @param metadataCache
+     */
+    public void setMetadataCache(MetadataCache metadataCache){
+        this.metadataCache = metadataCache;
+    }
+
+    public MetadataCache getMetadataCache(){
+        return metadataCache;
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set max jobs count downloaded by one batch process, 1 disables batch mode.
+     * @param batchSize
+     */
+    public void setBatchSize(int batchSize) {
+        synchronized(this){
+            this.batchSize = Math.max(1, batchSize);
+        }
+    }
+
+    public boolean isTwoPhase() {
+        return twoPhase;
+    }
+
+    /**
+     * Enable separate extraction and download stages (requires metadata cache).
+     * @param twoPhase
+     */
+    public void setTwoPhase(boolean twoPhase) {
+        this.twoPhase = twoPhase;
+    }
+
+    public void setRetryScheduler(RetryScheduler retryScheduler){
+        this.retryScheduler = retryScheduler;
+    }
+
+    public synchronized SchedulingPolicy getSchedulingPolicy() {
+        return pending.getPolicy();
+    }
+
+    /**
+     * Set order of pending jobs, queued jobs are reordered.
+     * @param policy
+     */
+    public void setSchedulingPolicy(SchedulingPolicy policy) {
+        synchronized(this){
+            if (pending.getPolicy()==policy) return;
+            PendingJobs reordered = new PendingJobs(policy);
+            pending.transferTo(reordered);
+            pending = reordered;
+        }
+        dispatch();
+    }
+
+    /**
+     * Change priority class of a job, queued job is reordered.
+     * @param job
+     * @param priority
+     */
+    public void setPriority(DownloadJob job, DownloadPriority priority){
+        synchronized(this){
+            boolean queued = pending.remove(job);
+            job.getCommand().setPriority(priority);
+            if (queued) pending.add(job);
+        }
+        fireStateChange(job);
+        dispatch();
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return concurrency!=null;
+    }
+
+    /**
+     * Enable {@link ConcurrencyController}, limits start from one download and
+     * grow up to max parallel and max per host values.
+     * @param adaptive
+     */
+    public void setAdaptiveConcurrency(boolean adaptive) {
+        synchronized(this){
+            if (adaptive==(concurrency!=null)) return;
+            concurrency = adaptive ? new ConcurrencyController() : null;
+            if (adaptive) scheduleConcurrencyUpdate(concurrency);
+        }
+        dispatch();
+    }
+
+    /**
+     * @return adaptive concurrency controller or null if it's disabled
+     */
+    public ConcurrencyController getConcurrencyController() {
+        return concurrency;
+    }
+
+    public PartialFilesPolicy getCancelCleanup() {
+        return cancelCleanup;
+    }
+
+    /**
+     * Set what is done with partial files of cancelled jobs. Shutdown always keeps them.
+     * @param cancelCleanup
+     */
+    public void setCancelCleanup(PartialFilesPolicy cancelCleanup) {
+        this.cancelCleanup = cancelCleanup;
+    }
+
+    public void onJobStateChange(Consumer<DownloadJob> jobStateHandler){
+        this.jobStateHandler = jobStateHandler;
+    }
+
+    public void onJobMessage(BiConsumer<DownloadJob,String> jobMessageHandler){
+        this.jobMessageHandler = jobMessageHandler;
+    }
+
+    /**
+     * Progress handler. {@link DownloadProgress} instance is reused by the job downloader,
+     * don't keep the reference outside of handler.
+     * @param jobProgressHandler
+     */
+    public void onJobProgress(BiConsumer<DownloadJob,DownloadProgress> jobProgressHandler){
+        this.jobProgressHandler = jobProgressHandler;
+    }
+
+    /**
+     * Event stream of all queue jobs for any number of subscribers.
+     * @return
+     */
+    public DownloadEventStream getEvents(){
+        return events;
+    }
+
+    /**
+     * Set limits from application properties, shared by GUI and headless modes.
+     * @param properties
+     * @param prefix properties key prefix like "frame.main"
+     */
+    public void applyProperties(ApplicationProperties properties, String prefix){
+        setMaxParallel( properties.getInt(prefix + ".max_parallel_downloads", getMaxParallel()));
+        setMaxPerHost( properties.getInt(prefix + ".max_downloads_per_host", getMaxPerHost()));
+        setTwoPhase( properties.getBool(prefix + ".two_phase", isTwoPhase()));
+        setBatchSize( properties.getInt(prefix + ".batch_size", getBatchSize()));
+        setCancelCleanup( PartialFilesPolicy.parse(properties.getProperty(prefix + ".cancel_cleanup", ""), getCancelCleanup()));
+        setSchedulingPolicy( SchedulingPolicy.parse(properties.getProperty(prefix + ".scheduling", ""), getSchedulingPolicy()));
+        setAdaptiveConcurrency( properties.getBool(prefix + ".adaptive_concurrency", isAdaptiveConcurrency()));
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Final result of a download task (all attempts).
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadResult {
+
+    private final int exitCode;
+    private final FailureClass failure;
+    private final List<DownloadAttempt> attempts;
+    private final List<Path> outputFiles;
+    private final long startTime;
+    private final long duration;
+
+    public DownloadResult(int exitCode, FailureClass failure, List<DownloadAttempt> attempts,
+            List<Path> outputFiles, long startTime, long duration){
+        this.exitCode = exitCode;
+        this.failure = failure;
+        this.attempts = List.copyOf(attempts);
+        this.outputFiles = List.copyOf(outputFiles);
+        this.startTime = startTime;
+        this.duration = duration;
+    }
+
+    public boolean isSuccess() {
+        return exitCode==0;
+    }
+
+    /**
+     * @return exit code of the last attempt
+     */
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return failure class of the last attempt or null for successful download
+     */
+    public FailureClass getFailure() {
+        return failure;
+    }
+
+    public List<DownloadAttempt> getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return files reported by the downloader, without intermediate files deleted after merging
+     */
+    public List<Path> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /**
+     * @return task start time in epoch millis
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * @return task duration in millis including retry delays
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(isSuccess() ? "success" : "failed: " + failure);
+        sb.append(", exit ").append(exitCode);
+        sb.append(", attempts ").append(attempts.size());
+        sb.append(", ").append(duration).append(" ms");
+        outputFiles.forEach(file -> sb.append("\n  ").append(file));
+        return sb.toString();
+    }
+
+}
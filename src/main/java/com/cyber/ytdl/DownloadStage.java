@@ -0,0 +1,60 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ * Stages of a single video download as printed by yt-dlp.
+ *
+ * @author Kirill Bereznyakov
+ */
+public enum DownloadStage {
+    EXTRACT("extract", 0.05),
+    SUBTITLES("subtitles", 0),
+    THUMBNAIL("thumbnail", 0),
+    DOWNLOAD("download", 0.85),
+    MERGE("merge", 0.05),
+    POSTPROCESS("postprocess", 0.05);
+
+    private final String title;
+    private final double weight;
+
+    DownloadStage(String title, double weight){
+        this.title = title;
+        this.weight = weight;
+    }
+
+    /**
+     * @return share of the overall job progress, small side files are not weighted
+     */
+    public double getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+
+}
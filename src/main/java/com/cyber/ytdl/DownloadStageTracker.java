@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Job progress state machine. Follows yt-dlp output through the stages
+ * (extraction, subtitles, thumbnail, every requested format, merge, post-processing)
+ * and folds them into one monotonic overall percent and ETA. Requested formats
+ * are weighted by byte size when the expected size is known, equally otherwise.
+ * Time spent in every stage is recorded.
+ * <p>
+ * Fed from the process reader thread, read from any thread.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadStageTracker {
+
+    private static final String DESTINATION_TAG = "[download] Destination: ";
+    private static final String ALREADY_DOWNLOADED_SUFFIX = "has already been downloaded";
+    private static final Pattern FORMAT_COUNT_PATTERN = Pattern.compile("Downloading (\\d+) format\\(s\\)");
+    private static final Pattern SUBTITLES_EXT_PATTERN = Pattern.compile("\\.(vtt|srt|ass|ssa|ttml|srv\\d|json3|lrc)$");
+    private static final Pattern THUMBNAIL_EXT_PATTERN = Pattern.compile("\\.(jpg|jpeg|png|webp)$");
+    private static final String[] POSTPROCESS_TAGS = {
+        "[EmbedThumbnail]", "[EmbedSubtitle]", "[ExtractAudio]", "[Metadata]", "[FFmpeg",
+        "[Fixup", "[ThumbnailsConvertor]", "[VideoConvertor]", "[VideoRemuxer]", "[MoveFiles]", "[SponsorBlock]"
+    };
+
+    private final Map<DownloadStage,Long> durations = new EnumMap<>(DownloadStage.class);
+
+    private DownloadStage stage;
+    private long stageStart;
+    private long expectedBytes = -1;
+    private int formatCount = 1;
+    private int finishedFormats = 0;
+    private long finishedBytes = 0;
+    private boolean formatStarted = false;
+    private double formatFraction = 0;
+    private long formatDownloaded = 0;
+    private long formatTotal = -1;
+    private double percent = 0;
+    private int eta = -1;
+
+    /**
+     * Start a new attempt from extraction.
+     * @param expectedBytes expected size of all requested formats or -1 if unknown
+     */
+    public synchronized void reset(long expectedBytes){
+        this.expectedBytes = expectedBytes;
+        durations.clear();
+        stage = null;
+        formatCount = 1;
+        finishedFormats = 0;
+        finishedBytes = 0;
+        formatStarted = false;
+        formatFraction = 0;
+        formatDownloaded = 0;
+        formatTotal = -1;
+        percent = 0;
+        eta = -1;
+        enter(DownloadStage.EXTRACT);
+    }
+
+    /**
+     * Feed a console line which is not a progress line.
+     * @param line
+     */
+    public synchronized void onLine(String line){
+        if (line.startsWith(DESTINATION_TAG)){
+            String file = line.substring(DESTINATION_TAG.length()).toLowerCase(Locale.ROOT);
+            if (SUBTITLES_EXT_PATTERN.matcher(file).find()){
+                enter(DownloadStage.SUBTITLES);
+            }else if (THUMBNAIL_EXT_PATTERN.matcher(file).find()){
+                enter(DownloadStage.THUMBNAIL);
+            }else{
+                startFormat();
+            }
+        }else if (line.startsWith("[download] ") && line.endsWith(ALREADY_DOWNLOADED_SUFFIX)){
+            startFormat();
+            formatFraction = 1;
+            update();
+        }else if (line.startsWith("[info] Writing video subtitles")){
+            enter(DownloadStage.SUBTITLES);
+        }else if (line.startsWith("[info] Writing video thumbnail")){
+            enter(DownloadStage.THUMBNAIL);
+        }else if (line.startsWith("[Merger]")){
+            finishFormat();
+            enter(DownloadStage.MERGE);
+            update();
+        }else if (isPostprocess(line)){
+            finishFormat();
+            enter(DownloadStage.POSTPROCESS);
+            update();
+        }else if (line.startsWith("[info] ")){
+            Matcher mat = FORMAT_COUNT_PATTERN.matcher(line);
+            if (mat.find()) formatCount = Math.max(1, Integer.parseInt(mat.group(1)));
+        }
+    }
+
+    /**
+     * Feed a download progress line.
+     * @param p
+     */
+    public synchronized void onProgress(DownloadProgress p){
+        if (stage==DownloadStage.SUBTITLES || stage==DownloadStage.THUMBNAIL) return;
+        if (stage!=DownloadStage.DOWNLOAD) startFormat();
+        formatFraction = p.getPercent() / 100.0;
+        formatDownloaded = Math.max(0, p.getDownloadedBytes());
+        formatTotal = p.getTotalBytes();
+        update();
+
+        if (p.getSpeed()>0 && expectedBytes>0){
+            long left = expectedBytes - finishedBytes - formatDownloaded;
+            eta = (int)(Math.max(0, left) / p.getSpeed());
+        }else if (p.getEta()>=0){
+            // current format only, the next formats are unknown
+            eta = p.getEta();
+        }
+    }
+
+    /**
+     * Close the current stage timing when the job is complete.
+     */
+    public synchronized void finish(){
+        if (stage!=null) durations.merge(stage, System.nanoTime() - stageStart, Long::sum);
+        stage = null;
+        percent = 100;
+        eta = 0;
+    }
+
+    public synchronized DownloadStage getStage(){
+        return stage;
+    }
+
+    /**
+     * @return overall percent, doesn't decrease within an attempt
+     */
+    public synchronized float getPercent(){
+        return (float)percent;
+    }
+
+    /**
+     * @return overall seconds left or -1 if unknown
+     */
+    public synchronized int getEta(){
+        return eta;
+    }
+
+    /**
+     * @return formats started of the requested, like 1/2
+     */
+    public synchronized String getFormatInfo(){
+        return Math.min(finishedFormats + (formatStarted ? 1 : 0), formatCount) + "/" + formatCount;
+    }
+
+    /**
+     * @return time spent in every passed stage, milliseconds, in stage order
+     */
+    public synchronized Map<DownloadStage,Long> getStageDurations(){
+        Map<DownloadStage,Long> result = new EnumMap<>(DownloadStage.class);
+        durations.forEach((s, nanos) -> result.put(s, nanos / 1_000_000));
+        if (stage!=null) result.merge(stage, (System.nanoTime() - stageStart) / 1_000_000, Long::sum);
+        return result;
+    }
+
+    private void enter(DownloadStage next){
+        if (next==stage) return;
+        long now = System.nanoTime();
+        if (stage!=null) durations.merge(stage, now - stageStart, Long::sum);
+        stage = next;
+        stageStart = now;
+    }
+
+    private void startFormat(){
+        finishFormat();
+        enter(DownloadStage.DOWNLOAD);
+        formatStarted = true;
+    }
+
+    private void finishFormat(){
+        if (!formatStarted) return;
+        finishedFormats++;
+        finishedBytes += Math.max(formatTotal, formatDownloaded);
+        formatStarted = false;
+        formatFraction = 0;
+        formatDownloaded = 0;
+        formatTotal = -1;
+    }
+
+    private boolean isPostprocess(String line){
+        for(String tag: POSTPROCESS_TAGS){
+            if (line.startsWith(tag)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Recalculate overall percent from the stages passed.
+     */
+    private void update(){
+        boolean merge = formatCount>1;
+        double total = DownloadStage.EXTRACT.getWeight() + DownloadStage.DOWNLOAD.getWeight()
+            + DownloadStage.POSTPROCESS.getWeight() + (merge ? DownloadStage.MERGE.getWeight() : 0);
+
+        double done = DownloadStage.EXTRACT.getWeight();
+        if (stage==DownloadStage.MERGE || stage==DownloadStage.POSTPROCESS){
+            done += DownloadStage.DOWNLOAD.getWeight();
+            if (stage==DownloadStage.POSTPROCESS && merge) done += DownloadStage.MERGE.getWeight();
+        }else{
+            done += DownloadStage.DOWNLOAD.getWeight() * downloadFraction();
+        }
+        percent = Math.max(percent, Math.min(99.9, 100 * done / total));
+    }
+
+    /**
+     * @return downloaded part of all requested formats
+     */
+    private double downloadFraction(){
+        double current = formatStarted ? formatFraction : 0;
+        if (expectedBytes>0){
+            long known = finishedBytes + (formatStarted ? Math.max(formatTotal, 0) : 0);
+            long downloaded = finishedBytes + (formatStarted ? formatDownloaded : 0);
+            if (formatStarted && formatDownloaded==0) downloaded += (long)(current * Math.max(formatTotal, 0));
+            return Math.min(1.0, (double)downloaded / Math.max(expectedBytes, known));
+        }
+        return Math.min(1.0, (finishedFormats + current) / formatCount);
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ * Download failure classes recognized in downloader output.
+ *
+ * @author Kirill Bereznyakov
+ */
+public enum FailureClass {
+    RATE_LIMITED("rate limited (HTTP 429)", true, 4),
+    FORBIDDEN("forbidden (HTTP 403)", true, 2),
+    NETWORK("network error", true, 1),
+    EXTRACTOR("extractor error", true, 1),
+    UNAVAILABLE("unsupported or unavailable", false, 0),
+    UNKNOWN("unknown error", true, 1);
+
+    private static final String[] NETWORK_MARKERS = {
+        "timed out", "Connection reset", "Connection refused", "Network is unreachable",
+        "Temporary failure in name resolution", "getaddrinfo failed", "Remote end closed connection",
+        "IncompleteRead", "urlopen error"
+    };
+
+    private static final String[] UNAVAILABLE_MARKERS = {
+        "Unsupported URL", "is not a valid URL", "Video unavailable", "Private video",
+        "This video is not available", "has been removed", "HTTP Error 404"
+    };
+
+    private final String title;
+    private final boolean retryable;
+    private final int delayFactor;
+
+    FailureClass(String title, boolean retryable, int delayFactor){
+        this.title = title;
+        this.retryable = retryable;
+        this.delayFactor = delayFactor;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * @return retry delay multiplier relative to base delay
+     */
+    public int getDelayFactor() {
+        return delayFactor;
+    }
+
+    /**
+     * Classify downloader console line. Only ERROR: and WARNING: reports are
+     * classified, titles and file names in other lines may contain any text.
+     * Warnings count only for HTTP 429 and 403 (retried requests).
+     * @param line console line
+     * @return failure class or null if line is not an error report
+     */
+    public static FailureClass classify(String line){
+        boolean error = line.startsWith("ERROR:");
+        if (!error && !line.startsWith("WARNING:")) return null;
+        if (line.contains("HTTP Error 429")) return RATE_LIMITED;
+        if (line.contains("HTTP Error 403")) return FORBIDDEN;
+        if (!error) return null;
+
+        if (containsAny(line, UNAVAILABLE_MARKERS)) return UNAVAILABLE;
+        if (containsAny(line, NETWORK_MARKERS)) return NETWORK;
+        return EXTRACTOR;
+    }
+
+    private static boolean containsAny(String line, String[] markers){
+        for(String marker: markers){
+            if (line.contains(marker)) return true;
+        }
+        return false;
+    }
+
+}
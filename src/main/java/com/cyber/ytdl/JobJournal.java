@@ -0,0 +1,308 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only journal of download jobs. Every submission and state change is
+ * appended as a text record:
+ * <pre>
+ * S &lt;id&gt; &lt;url-encoded command fields&gt;
+ * T &lt;id&gt; &lt;state&gt;
+ * </pre>
+ * Every record ends with a line break, a record without it at the end of file
+ * is torn by a crash and skipped on replay.
+ * Records are buffered and synced to disk in batches by a background thread,
+ * the file is compacted to unfinished submissions (and pause states) when most
+ * records are dead. Unfinished jobs are returned by {@link #recover()} on the
+ * next start, paused ones are told by {@link #isPaused(long)}.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class JobJournal implements Closeable{
+
+    public static final String DEFAULT_FILE_NAME = "jobs.journal";
+
+    private static final long SYNC_INTERVAL_MS = 500;
+    private static final int COMPACT_MIN_RECORDS = 1000;
+
+    private final Path file;
+    private final Map<Long,String> live = new LinkedHashMap<>();
+    private final Set<Long> paused = new HashSet<>();
+    private final ScheduledExecutorService syncExecutor;
+
+    private FileChannel channel;
+    private Writer writer;
+    private int records = 0;
+    private boolean dirty = false;
+
+    public JobJournal(Path file){
+        this.file = file;
+        this.syncExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "job-journal");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Replay journal file, compact it and open for appending. Must be called
+     * before any other journal operation.
+     * @return unfinished jobs commands by job id in submission order
+     */
+    public synchronized Map<Long,VideoDownloaderCommand> recover(){
+        Map<Long,VideoDownloaderCommand> unfinished = new LinkedHashMap<>();
+        live.clear();
+        paused.clear();
+
+        if (Files.exists(file)){
+            try(BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)){
+                // last record without line end is torn by a crash in the middle of write
+                boolean terminated = isTerminated(file);
+                String line, last = null;
+                while((line=in.readLine())!=null){
+                    if (last!=null) replay(last);
+                    last = line;
+                }
+                if (last!=null && terminated){
+                    replay(last);
+                }else if (last!=null){
+                    System.err.println("JobJournal: skip torn record '" + last + "'");
+                }
+            }catch(IOException ex){
+                System.err.println("JobJournal.recover() error: " + ex);
+            }
+        }
+
+        live.forEach((id, fields) -> {
+            try{
+                unfinished.put(id, VideoDownloaderCommand.fromFieldMap(decodeFields(fields)));
+            }catch(IllegalArgumentException ex){
+                System.err.println("JobJournal: skip broken job #" + id + ": " + ex);
+            }
+        });
+
+        compact();
+        syncExecutor.scheduleWithFixedDelay(this::maintenance, SYNC_INTERVAL_MS, SYNC_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        return unfinished;
+    }
+
+    protected void replay(String line){
+        String[] parts = line.split(" ", 3);
+        if (parts.length<3) return;
+
+        try{
+            long id = Long.parseLong(parts[1]);
+            if ("S".equals(parts[0])){
+                live.put(id, parts[2]);
+            }else if ("T".equals(parts[0])){
+                DownloadJobState state = DownloadJobState.valueOf(parts[2]);
+                if (!state.isActive()) live.remove(id);
+                setPaused(id, state==DownloadJobState.PAUSED);
+            }
+        }catch(IllegalArgumentException ex){
+            System.err.println("JobJournal: skip broken record '" + line + "'");
+        }
+    }
+
+    private static boolean isTerminated(Path file) throws IOException{
+        try(FileChannel in = FileChannel.open(file, StandardOpenOption.READ)){
+            long size = in.size();
+            if (size==0) return true;
+            ByteBuffer buf = ByteBuffer.allocate(1);
+            in.read(buf, size-1);
+            return buf.get(0)=='\n';
+        }
+    }
+
+    public synchronized void submitted(DownloadJob job){
+        String fields = encodeFields(job.getCommand().toFieldMap());
+        live.put(job.getId(), fields);
+        append("S " + job.getId() + " " + fields);
+    }
+
+    public synchronized void stateChanged(DownloadJob job){
+        if (!live.containsKey(job.getId())) return;
+        if (!job.getState().isActive()) live.remove(job.getId());
+        setPaused(job.getId(), job.getState()==DownloadJobState.PAUSED);
+        append("T " + job.getId() + " " + job.getState().name());
+    }
+
+    /**
+     * @param id recovered job id
+     * @return true if the job was paused when the journal was closed
+     */
+    public synchronized boolean isPaused(long id){
+        return paused.contains(id);
+    }
+
+    private void setPaused(long id, boolean isPaused){
+        if (isPaused){
+            paused.add(id);
+        }else{
+            paused.remove(id);
+        }
+    }
+
+    private void append(String record){
+        if (writer==null) return;
+        try{
+            writer.write(record);
+            writer.write('\n');
+            records++;
+            dirty = true;
+        }catch(IOException ex){
+            System.err.println("JobJournal.append() error: " + ex);
+        }
+    }
+
+    /**
+     * Flush buffered records and force them to disk.
+     */
+    public synchronized void sync(){
+        if (!dirty || writer==null) return;
+        try{
+            writer.flush();
+            channel.force(false);
+            dirty = false;
+        }catch(IOException ex){
+            System.err.println("JobJournal.sync() error: " + ex);
+        }
+    }
+
+    protected synchronized void maintenance(){
+        if (writer==null) return;
+        if (records>=COMPACT_MIN_RECORDS && records>2*live.size()){
+            compact();
+        }else{
+            sync();
+        }
+    }
+
+    /**
+     * Rewrite journal with unfinished submissions only. New file is written aside
+     * and atomically replaces the old one.
+     */
+    public synchronized void compact(){
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try{
+            closeWriter();
+
+            try(FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                Writer tmpWriter = newWriter(tmpChannel)
+            ){
+                for(Map.Entry<Long,String> e: live.entrySet()){
+                    tmpWriter.write("S " + e.getKey() + " " + e.getValue() + "\n");
+                    if (paused.contains(e.getKey())) tmpWriter.write("T " + e.getKey() + " " + DownloadJobState.PAUSED.name() + "\n");
+                }
+                tmpWriter.flush();
+                tmpChannel.force(false);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            records = live.size() + paused.size();
+        }catch(IOException ex){
+            System.err.println("JobJournal.compact() error: " + ex);
+        }
+
+        try{
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            writer = newWriter(channel);
+        }catch(IOException ex){
+            System.err.println("JobJournal.compact() reopen error: " + ex);
+        }
+    }
+
+    @Override
+    public synchronized void close(){
+        syncExecutor.shutdown();
+        sync();
+        try{
+            closeWriter();
+        }catch(IOException ex){
+            System.err.println("JobJournal.close() error: " + ex);
+        }
+    }
+
+    private void closeWriter() throws IOException{
+        if (writer!=null){
+            sync();
+            writer.close();
+            writer = null;
+            channel = null;
+        }
+    }
+
+    private static Writer newWriter(FileChannel channel){
+        return new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+    }
+
+    private static String encodeFields(Map<String,String> fields){
+        StringBuilder sb = new StringBuilder();
+        fields.forEach((key, value) -> {
+            if (sb.length()>0) sb.append('&');
+            sb  .append(URLEncoder.encode(key, StandardCharsets.UTF_8))
+                .append('=')
+                .append(URLEncoder.encode(value, StandardCharsets.UTF_8));
+        });
+        return sb.toString();
+    }
+
+    private static Map<String,String> decodeFields(String encoded){
+        Map<String,String> fields = new LinkedHashMap<>();
+        for(String pair: encoded.split("&")){
+            int eq = pair.indexOf('=');
+            if (eq<0) continue;
+            fields.put(
+                URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                URLDecoder.decode(pair.substring(eq+1), StandardCharsets.UTF_8));
+        }
+        return fields;
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Full output of every job spilled to its own file {@code job-<id>.log},
+ * so the on-screen console can stay bounded. A file is open while its job
+ * is active and closed when the job reaches a final state.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class JobLog implements Closeable{
+
+    public static final String DEFAULT_DIR_NAME = "logs";
+
+    private final Path dir;
+    private final Map<Long,Writer> writers = new HashMap<>();
+
+    public JobLog(Path dir){
+        this.dir = dir;
+    }
+
+    public Path getFile(long jobId){
+        return dir.resolve("job-" + jobId + ".log");
+    }
+
+    /**
+     * Append a line to the job log, the file is created on first write.
+     * @param job
+     * @param line
+     */
+    public synchronized void append(DownloadJob job, String line){
+        Writer writer = writers.get(job.getId());
+        try{
+            if (writer==null){
+                Files.createDirectories(dir);
+                writer = Files.newBufferedWriter(getFile(job.getId()), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                writers.put(job.getId(), writer);
+            }
+            writer.write(line);
+            writer.write('\n');
+        }catch(IOException ex){
+            System.err.println("job log write error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Close the job log file when the job is finished.
+     * @param job
+     */
+    public synchronized void onStateChange(DownloadJob job){
+        if (job.getState().isActive()) return;
+        close(writers.remove(job.getId()));
+    }
+
+    @Override
+    public synchronized void close(){
+        writers.values().forEach(this::close);
+        writers.clear();
+    }
+
+    private void close(Writer writer){
+        if (writer==null) return;
+        try{
+            writer.close();
+        }catch(IOException ex){
+            System.err.println("job log close error: " + ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,416 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import com.cyber.util.Json;
+import com.cyber.util.RunnableProcess;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * On-disk cache of downloader info JSON keyed by canonical URL. Entries
+ * expire after TTL, the cache is limited by entries count and total size
+ * with least recently used entries evicted first. Index is kept in memory
+ * and rebuilt from cache directory on start.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class MetadataCache {
+
+    public static final String DEFAULT_DIR_NAME = "metadata-cache";
+    public static final long DEFAULT_TTL_MS = 2*60*60*1000;     // extracted media URLs expire in a few hours
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+    public static final long DEFAULT_MAX_BYTES = 256*1024*1024;
+
+    private static final String FILE_EXT = ".json";
+    private static final int FETCH_THREADS = 2;
+
+    private static class Entry{
+        final Path file;
+        final long created;
+        final long size;
+        SoftReference<VideoMetadata> parsed = new SoftReference<>(null);
+
+        Entry(Path file, long created, long size){
+            this.file = file;
+            this.created = created;
+            this.size = size;
+        }
+    }
+
+    private static class Fetch{
+        final CompletableFuture<VideoMetadata> future = new CompletableFuture<>();
+        volatile RunnableProcess proc;
+        volatile boolean cancelled = false;
+        int subscribers = 0;
+    }
+
+    private final Path dir;
+    private final long ttl;
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final LinkedHashMap<String,Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String,Fetch> inFlight = new HashMap<>();
+    private final ExecutorService executor;
+    private long totalBytes = 0;
+
+    public MetadataCache(Path dir){
+        this(dir, DEFAULT_TTL_MS, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    public MetadataCache(Path dir, long ttl, int maxEntries, long maxBytes){
+        this.dir = dir;
+        this.ttl = ttl;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+
+        AtomicInteger threadCounter = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(FETCH_THREADS, r -> {
+            Thread t = new Thread(r, "metadata-fetch-" + threadCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        loadIndex();
+    }
+
+    /**
+     * Normalize URL to use as cache key: lower case host without "www.",
+     * no fragment, short youtu.be links expanded.
+     * @param url
+     * @return canonical URL or trimmed source string if it's not parseable
+     */
+    public static String canonicalUrl(String url){
+        String str = url.trim();
+        try{
+            URI uri = URI.create(str);
+            String host = DownloadJob.getHost(str);
+            if (host.isEmpty()) return str;
+
+            String path = uri.getRawPath()==null ? "" : uri.getRawPath();
+            String query = uri.getRawQuery();
+
+            if ("youtu.be".equals(host) && path.length()>1){
+                return "https://youtube.com/watch?v=" + path.substring(1);
+            }
+            if ("m.youtube.com".equals(host)) host = "youtube.com";
+
+            return "https://" + host + path + (query==null ? "" : "?" + query);
+        }catch(IllegalArgumentException ex){
+            return str;
+        }
+    }
+
+    /**
+     * Get cached metadata.
+     * @param vdc download command (url and playlist mode are used)
+     * @return metadata or null if not cached or expired
+     */
+    public VideoMetadata get(VideoDownloaderCommand vdc){
+        String key = key(vdc);
+        Entry entry;
+        synchronized(this){
+            entry = index.get(key);
+            if (entry==null) return null;
+            if (isExpired(entry)){
+                remove(key);
+                return null;
+            }
+            VideoMetadata metadata = entry.parsed.get();
+            if (metadata!=null) return metadata;
+        }
+
+        try{
+            VideoMetadata metadata = new VideoMetadata(Json.parseObject(Files.readString(entry.file, StandardCharsets.UTF_8)));
+            entry.parsed = new SoftReference<>(metadata);
+            return metadata;
+        }catch(IOException | IllegalArgumentException ex){
+            System.err.println("MetadataCache.get() error: " + ex);
+            synchronized(this){
+                remove(key);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Get cached metadata in background, info JSON is read on the extraction pool.
+     * @param vdc download command (url and playlist mode are used)
+     * @return metadata future, completed with null if not cached or expired
+     */
+    public CompletableFuture<VideoMetadata> getAsync(VideoDownloaderCommand vdc){
+        return CompletableFuture.supplyAsync(() -> get(vdc), executor);
+    }
+
+    /**
+     * Get info JSON file of cached metadata.
+     * @param vdc download command (url and playlist mode are used)
+     * @return file path or null if not cached or expired
+     */
+    public synchronized Path getInfoFile(VideoDownloaderCommand vdc){
+        String key = key(vdc);
+        Entry entry = index.get(key);
+        if (entry==null) return null;
+        if (isExpired(entry)){
+            remove(key);
+            return null;
+        }
+        return entry.file;
+    }
+
+    /**
+     * Get cached metadata or run extraction. Blocks until extraction is finished.
+     * @param vdc download command (url and network options are used)
+     * @return metadata
+     * @throws IOException if extraction is failed
+     */
+    public VideoMetadata fetch(VideoDownloaderCommand vdc) throws IOException{
+        return fetch(vdc, proc -> {});
+    }
+
+    protected VideoMetadata fetch(VideoDownloaderCommand vdc, Consumer<RunnableProcess> processHandler) throws IOException{
+        VideoMetadata cached = get(vdc);
+        if (cached!=null) return cached;
+
+        String key = key(vdc);
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        List<String> errors = new ArrayList<>();
+
+        try{
+            RunnableProcess proc = new RunnableProcess(vdc.toExtractList())
+                .redirectOutput(tmp.toFile())
+                .onOutput(line -> {
+                    if (line.startsWith("ERROR:")) errors.add(line);
+                });
+            processHandler.accept(proc);
+
+            try{
+                proc.run();
+            }catch(RuntimeException ex){
+                throw new IOException("metadata extraction can't be started", ex);
+            }
+
+            if (proc.exitValue()!=0){
+                throw new IOException(errors.isEmpty()
+                    ? "metadata extraction error, exit code " + proc.exitValue()
+                    : errors.get(errors.size()-1));
+            }
+
+            VideoMetadata metadata;
+            try{
+                metadata = new VideoMetadata(Json.parseObject(Files.readString(tmp, StandardCharsets.UTF_8)));
+            }catch(IllegalArgumentException ex){
+                throw new IOException("bad metadata JSON", ex);
+            }
+
+            Path file = dir.resolve(key + FILE_EXT);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            Entry entry = new Entry(file, System.currentTimeMillis(), Files.size(file));
+            entry.parsed = new SoftReference<>(metadata);
+            synchronized(this){
+                put(key, entry);
+                evict();
+            }
+            return metadata;
+        }finally{
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Fetch metadata in background. Concurrent requests for the same URL share one
+     * extraction. Every caller gets its own future: cancelling it unsubscribes the caller,
+     * the extraction process is destroyed when no subscribers are left.
+     * @param vdc download command
+     * @return metadata future
+     */
+    public synchronized CompletableFuture<VideoMetadata> fetchAsync(VideoDownloaderCommand vdc){
+        String key = key(vdc);
+        Fetch fetch = inFlight.get(key);
+
+        if (fetch==null){
+            Fetch newFetch = new Fetch();
+            inFlight.put(key, newFetch);
+            executor.execute(() -> runFetch(key, vdc, newFetch));
+            fetch = newFetch;
+        }
+
+        Fetch subscribed = fetch;
+        subscribed.subscribers++;
+        CompletableFuture<VideoMetadata> result = subscribed.future.copy();
+        result.whenComplete((metadata, ex) -> {
+            if (result.isCancelled()) unsubscribe(key, subscribed);
+        });
+        return result;
+    }
+
+    private void runFetch(String key, VideoDownloaderCommand vdc, Fetch fetch){
+        try{
+            if (!fetch.cancelled) fetch.future.complete(fetch(vdc, proc -> fetch.proc = proc));
+        }catch(IOException | RuntimeException ex){
+            fetch.future.completeExceptionally(ex);
+        }finally{
+            synchronized(this){
+                inFlight.remove(key, fetch);
+            }
+        }
+    }
+
+    private synchronized void unsubscribe(String key, Fetch fetch){
+        if (--fetch.subscribers>0 || fetch.future.isDone()) return;
+
+        fetch.cancelled = true;
+        inFlight.remove(key, fetch);
+        RunnableProcess proc = fetch.proc;
+        if (proc!=null) proc.destroy();
+        fetch.future.cancel(false);
+    }
+
+    /**
+     * @param url
+     * @return true if string looks like http(s) URL with host
+     */
+    public static boolean isFetchableUrl(String url){
+        String str = url.trim();
+        return (str.startsWith("http://") || str.startsWith("https://"))
+            && str.indexOf(' ')<0
+            && !DownloadJob.getHost(str).isEmpty();
+    }
+
+    /**
+     * Remove cached metadata (stale info etc.)
+     * @param vdc download command
+     */
+    public synchronized void invalidate(VideoDownloaderCommand vdc){
+        remove(key(vdc));
+    }
+
+    public synchronized int size(){
+        return index.size();
+    }
+
+    public synchronized long getTotalBytes(){
+        return totalBytes;
+    }
+
+    private void loadIndex(){
+        if (!Files.isDirectory(dir)) return;
+
+        List<Entry> entries = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + FILE_EXT)){
+            for(Path file: files){
+                entries.add(new Entry(file, Files.getLastModifiedTime(file).toMillis(), Files.size(file)));
+            }
+        }catch(IOException ex){
+            System.err.println("MetadataCache.loadIndex() error: " + ex);
+        }
+
+        // oldest first, so they are evicted first
+        entries.sort((a, b) -> Long.compare(a.created, b.created));
+
+        synchronized(this){
+            for(Entry entry: entries){
+                String name = entry.file.getFileName().toString();
+                put(name.substring(0, name.length()-FILE_EXT.length()), entry);
+            }
+            evict();
+        }
+    }
+
+    private void put(String key, Entry entry){
+        Entry old = index.put(key, entry);
+        if (old!=null) totalBytes -= old.size;
+        totalBytes += entry.size;
+    }
+
+    private void remove(String key){
+        Entry entry = index.remove(key);
+        if (entry==null) return;
+        totalBytes -= entry.size;
+        try{
+            Files.deleteIfExists(entry.file);
+        }catch(IOException ex){
+            System.err.println("MetadataCache.remove() error: " + ex);
+        }
+    }
+
+    private void evict(){
+        Iterator<Map.Entry<String,Entry>> it = index.entrySet().iterator();
+        List<String> victims = new ArrayList<>();
+        int count = index.size();
+        long bytes = totalBytes;
+
+        while(it.hasNext()){
+            Map.Entry<String,Entry> e = it.next();
+            if (count<=maxEntries && bytes<=maxBytes && !isExpired(e.getValue())) continue;
+            victims.add(e.getKey());
+            count--;
+            bytes -= e.getValue().size;
+        }
+        victims.forEach(this::remove);
+    }
+
+    private boolean isExpired(Entry entry){
+        return System.currentTimeMillis() - entry.created > ttl;
+    }
+
+    /**
+     * Playlist and single video info of the same URL are different entries.
+     */
+    static String key(VideoDownloaderCommand vdc){
+        String str = canonicalUrl(vdc.getUrl()) + (vdc.isPlaylistAllowed() ? " playlist" : "");
+        try{
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(str.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(hash.length*2);
+            for(byte b: hash) sb.append(String.format("%02x", b));
+            return sb.toString();
+        }catch(NoSuchAlgorithmException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
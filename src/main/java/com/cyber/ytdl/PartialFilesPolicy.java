@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * What to do with partial download artifacts of a stopped task. Files are found
+ * by the output file names the downloader has reported: fragments, .ytdl state,
+ * merger temp files, .part files and not yet merged format files.
+ *
+ * @author Kirill Bereznyakov
+ */
+public enum PartialFilesPolicy {
+    /** Keep everything, the download can be continued. */
+    KEEP("keep"),
+    /** Delete fragments and post-processing temp files, keep .part files to continue. */
+    TEMP("temp"),
+    /** Delete all partial files including .part and unmerged format files. */
+    ALL("all");
+
+    private static final Pattern FORMAT_FILE_PATTERN = Pattern.compile("\\.f\\d+(-\\d+)?\\.\\w+$");
+    private static final Pattern EXT_PATTERN = Pattern.compile("\\.\\w+$");
+
+    private final String title;
+
+    PartialFilesPolicy(String title){
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+
+    /**
+     * @param str policy title
+     * @param defaultValue
+     * @return policy or default value if the string is unknown
+     */
+    public static PartialFilesPolicy parse(String str, PartialFilesPolicy defaultValue){
+        for(PartialFilesPolicy policy: values()){
+            if (policy.title.equalsIgnoreCase(str)) return policy;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Delete partial files of the output files according to the policy.
+     * Completed files are never deleted.
+     * @param outputFiles output file names reported by the downloader
+     * @return deleted bytes
+     */
+    public long cleanup(Collection<Path> outputFiles){
+        if (this==KEEP) return 0;
+
+        Set<Path> candidates = new LinkedHashSet<>();
+        for(Path file: outputFiles){
+            String name = file.toString();
+            candidates.add(Paths.get(name + ".ytdl"));
+            candidates.add(Paths.get(EXT_PATTERN.matcher(name).replaceFirst(".temp$0")));
+            collectFragments(file, candidates);
+            if (this==ALL){
+                candidates.add(Paths.get(name + ".part"));
+                if (FORMAT_FILE_PATTERN.matcher(name).find()) candidates.add(file);
+            }
+        }
+
+        long deleted = 0;
+        for(Path file: candidates){
+            try{
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file)) deleted += size;
+            }catch(IOException ex){
+                // doesn't exist or still locked
+            }
+        }
+        return deleted;
+    }
+
+    private static void collectFragments(Path file, Set<Path> candidates){
+        Path dir = file.toAbsolutePath().getParent();
+        String prefix = file.getFileName() + ".part-Frag";
+        if (dir==null || !Files.isDirectory(dir)) return;
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(dir, entry -> entry.getFileName().toString().startsWith(prefix))){
+            stream.forEach(candidates::add);
+        }catch(IOException ex){
+            // nothing to collect
+        }
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * Pending jobs of {@link DownloadQueue} ordered by {@link SchedulingPolicy}.
+ * Ready jobs are kept in per-host ordered sets, and non-empty hosts are ordered
+ * by their first job (or by last service time in round robin mode), so add,
+ * remove and take are O(log n). Finding the next job skips only hosts which are
+ * at their limit. Jobs with extraction in progress or with a destroyed process tree
+ * which hasn't exited yet wait aside until {@link #ready(DownloadJob)}.
+ * <p>
+ * In round robin mode a host whose queue has emptied keeps its last service time
+ * until it stays empty through a whole dispatch pass ({@link #dispatched()}), so a
+ * host refilled right after its last job was taken doesn't jump ahead of others.
+ * <p>
+ * Not thread-safe, guarded by the queue lock.
+ *
+ * @author Kirill Bereznyakov
+ */
+class PendingJobs {
+
+    private static final Comparator<DownloadJob> JOB_ORDER = Comparator
+        .comparingLong((DownloadJob job) -> job.scheduleKey)
+        .thenComparingLong(job -> job.scheduleSequence);
+
+    private class HostQueue{
+        final String host;
+        final TreeSet<DownloadJob> jobs = new TreeSet<>(JOB_ORDER);
+        long lastServed = 0;
+        long idleSince = 0;
+
+        HostQueue(String host){
+            this.host = host;
+        }
+    }
+
+    private final SchedulingPolicy policy;
+    private final Map<String,HostQueue> hosts = new HashMap<>();
+    private final TreeSet<HostQueue> order;
+    private final Set<DownloadJob> waiting = new LinkedHashSet<>();
+    private final Set<HostQueue> idle = new LinkedHashSet<>();
+    private long sequence = 0;
+    private long frontSequence = 0;
+    private long served = 0;
+    private long pass = 0;
+    private int readyCount = 0;
+
+    PendingJobs(SchedulingPolicy policy){
+        this.policy = policy;
+        Comparator<HostQueue> hostOrder = policy.isRoundRobin()
+            ? Comparator.comparingLong(hq -> hq.lastServed)
+            : Comparator.comparing(hq -> hq.jobs.first(), JOB_ORDER);
+        this.order = new TreeSet<>(hostOrder.thenComparing(hq -> hq.host));
+    }
+
+    SchedulingPolicy getPolicy(){
+        return policy;
+    }
+
+    /**
+     * Add job after all jobs of the same key.
+     * @param job
+     */
+    void add(DownloadJob job){
+        job.scheduleSequence = ++sequence;
+        put(job);
+    }
+
+    /**
+     * Add job before all jobs of the same key (returned to the queue).
+     * @param job
+     */
+    void addFirst(DownloadJob job){
+        job.scheduleSequence = --frontSequence;
+        put(job);
+    }
+
+    private void put(DownloadJob job){
+        if (isWaiting(job)){
+            waiting.add(job);
+        }else{
+            insert(job);
+        }
+    }
+
+    private static boolean isWaiting(DownloadJob job){
+        return (job.extraction!=null && !job.extraction.isDone())
+            || (job.terminated!=null && !job.terminated.isDone());
+    }
+
+    private void insert(DownloadJob job){
+        job.scheduleKey = policy.key(job);
+        HostQueue hq = hosts.computeIfAbsent(job.getHost(), HostQueue::new);
+        if (!hq.jobs.isEmpty()){
+            order.remove(hq);
+        }else{
+            idle.remove(hq);
+        }
+        hq.jobs.add(job);
+        order.add(hq);
+        readyCount++;
+    }
+
+    /**
+     * Waiting job has finished extraction or its old process tree has exited,
+     * it's scheduled if it doesn't wait for the other one.
+     * @param job
+     */
+    void ready(DownloadJob job){
+        if (!isWaiting(job) && waiting.remove(job)) insert(job);
+    }
+
+    /**
+     * Job key may have changed (metadata has arrived), ready job is reordered.
+     * @param job
+     */
+    void reorder(DownloadJob job){
+        if (removeReady(job, false)) insert(job);
+    }
+
+    /**
+     * @param job
+     * @return true if the job was pending
+     */
+    boolean remove(DownloadJob job){
+        return waiting.remove(job) || removeReady(job, false);
+    }
+
+    /**
+     * Remove job to start it. The host is served in round robin mode.
+     * @param job ready job
+     */
+    void take(DownloadJob job){
+        removeReady(job, true);
+    }
+
+    private boolean removeReady(DownloadJob job, boolean serve){
+        HostQueue hq = hosts.get(job.getHost());
+        if (hq==null || !hq.jobs.contains(job)) return false;
+        order.remove(hq);
+        hq.jobs.remove(job);
+        if (serve) hq.lastServed = ++served;
+        if (hq.jobs.isEmpty()){
+            if (policy.isRoundRobin()){
+                hq.idleSince = pass;
+                idle.add(hq);
+            }else{
+                hosts.remove(hq.host);
+            }
+        }else{
+            order.add(hq);
+        }
+        readyCount--;
+        return true;
+    }
+
+    /**
+     * End of a dispatch pass: hosts which have been empty since before the previous
+     * pass forget their service time.
+     */
+    void dispatched(){
+        pass++;
+        for(Iterator<HostQueue> it = idle.iterator(); it.hasNext(); ){
+            HostQueue hq = it.next();
+            if (hq.idleSince >= pass-1) break;
+            it.remove();
+            hosts.remove(hq.host);
+        }
+    }
+
+    /**
+     * @param hostAvailable host limit check
+     * @return first ready job of available host or null
+     */
+    DownloadJob next(Predicate<String> hostAvailable){
+        for(HostQueue hq: order){
+            if (hostAvailable.test(hq.host)) return hq.jobs.first();
+        }
+        return null;
+    }
+
+    /**
+     * @param host
+     * @return ready jobs of the host in schedule order, live view
+     */
+    Iterable<DownloadJob> ofHost(String host){
+        HostQueue hq = hosts.get(host);
+        return hq!=null ? hq.jobs : List.of();
+    }
+
+    /**
+     * @return all pending jobs, ready ones in schedule order of their hosts
+     */
+    List<DownloadJob> toList(){
+        List<DownloadJob> list = new ArrayList<>(size());
+        order.forEach(hq -> list.addAll(hq.jobs));
+        list.addAll(waiting);
+        return list;
+    }
+
+    /**
+     * Move all jobs to an empty instance of another policy keeping their queue order.
+     * @param target
+     */
+    void transferTo(PendingJobs target){
+        toList().forEach(target::put);
+        target.sequence = sequence;
+        target.frontSequence = frontSequence;
+        clear();
+    }
+
+    void clear(){
+        hosts.clear();
+        order.clear();
+        idle.clear();
+        waiting.clear();
+        readyCount = 0;
+    }
+
+    int size(){
+        return readyCount + waiting.size();
+    }
+
+    boolean isEmpty(){
+        return size()==0;
+    }
+
+}
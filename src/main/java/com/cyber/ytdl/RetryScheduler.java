@@ -0,0 +1,100 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry policy with exponential backoff and jitter. Delayed retries of all
+ * downloaders run on one shared scheduler thread.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class RetryScheduler {
+
+    public static final long DEFAULT_BASE_DELAY_MS = 2000;
+    public static final long DEFAULT_MAX_DELAY_MS = 5*60*1000;
+
+    private static final int MAX_BACKOFF_EXP = 20;
+    private static final RetryScheduler DEFAULT = new RetryScheduler(DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS);
+    private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "retry-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final long baseDelay;
+    private final long maxDelay;
+
+    public RetryScheduler(long baseDelay, long maxDelay){
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public static RetryScheduler getDefault(){
+        return DEFAULT;
+    }
+
+    /**
+     * @param failure failure class of the last attempt
+     * @param attempt number of the failed attempt (starts from 1)
+     * @param maxAttempts attempts limit
+     * @return true if the next attempt should be made
+     */
+    public boolean shouldRetry(FailureClass failure, int attempt, int maxAttempts){
+        return failure.isRetryable() && attempt < maxAttempts;
+    }
+
+    /**
+     * Delay before the next attempt: base * factor * 2^(attempt-1) capped by max delay,
+     * then randomized in [delay/2, delay] range so parallel jobs don't retry in step.
+     * @param failure failure class of the last attempt
+     * @param attempt number of the failed attempt (starts from 1)
+     * @return delay in millis
+     */
+    public long nextDelay(FailureClass failure, int attempt){
+        int exp = Math.min(Math.max(attempt-1, 0), MAX_BACKOFF_EXP);
+        long delay = Math.min(baseDelay * failure.getDelayFactor() * (1L << exp), maxDelay);
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delay){
+        return EXECUTOR.schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public long getBaseDelay() {
+        return baseDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+}
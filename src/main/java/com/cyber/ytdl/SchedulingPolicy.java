@@ -0,0 +1,95 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+/**
+ * Order in which {@link DownloadQueue} starts pending jobs. Jobs are ordered by
+ * policy key, then by queue order; host limits are applied on top of any policy.
+ *
+ * @author Kirill Bereznyakov
+ */
+public enum SchedulingPolicy {
+    /** Submission order. */
+    FIFO("fifo"),
+    /** Higher priority class first, running jobs of lower priority are preempted. */
+    PRIORITY("priority"),
+    /** Smaller estimated size first (metadata required), unknown size last. */
+    SHORTEST_FIRST("shortest"),
+    /** Source hosts take turns, least recently served host first, FIFO within host. */
+    FAIR_SHARE("fair");
+
+    private final String title;
+
+    SchedulingPolicy(String title){
+        this.title = title;
+    }
+
+    @Override
+    public String toString() {
+        return title;
+    }
+
+    /**
+     * @param str policy title
+     * @param defaultValue
+     * @return policy or default value if the string is unknown
+     */
+    public static SchedulingPolicy parse(String str, SchedulingPolicy defaultValue){
+        for(SchedulingPolicy policy: values()){
+            if (policy.title.equalsIgnoreCase(str)) return policy;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Order key of a job, smaller goes first. Taken once when the job becomes ready.
+     * @param job
+     * @return key
+     */
+    public long key(DownloadJob job){
+        switch(this){
+            case PRIORITY: return -job.getPriority().ordinal();
+            case SHORTEST_FIRST:
+                long size = job.getEstimatedSize();
+                return size>=0 ? size : Long.MAX_VALUE;
+            default: return 0;
+        }
+    }
+
+    /**
+     * @return true if a ready job may take the slot of a running one
+     */
+    public boolean isPreemptive(){
+        return this==PRIORITY;
+    }
+
+    /**
+     * @return true if hosts are served in turns instead of by their best job
+     */
+    public boolean isRoundRobin(){
+        return this==FAIR_SHARE;
+    }
+
+}
@@ -24,13 +24,21 @@
 
 package com.cyber.ytdl;
 
+import com.cyber.util.ProcessRuntime;
 import com.cyber.util.RunnableProcess;
+import com.cyber.util.Units;
 
 import java.io.File;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
 import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -44,19 +52,41 @@ public class VideoDownloader {
     public static String[] DOWNLOADER_LIST = {"yt-dlp", "yt-dlp_x86"};
 
     public static String YTDL_OUTFILE_FORMAT_STR = "%(title)s - [%(channel)s]-%(resolution)s.%(ext)s";
-    private static Pattern DOWNLOAD_PROGRESS_PATTERN = Pattern.compile("\\[download\\]\\s+([\\d\\.]+)\\% of ", Pattern.UNICODE_CHARACTER_CLASS);
 
-    private RunnableProcess proc;
-    private boolean interrupted = false;
+    private static final Pattern OUTPUT_FILE_PATTERN = Pattern.compile(
+        "^(?:\\[(?:download|ExtractAudio)\\] Destination: (.+)"
+        + "|\\[download\\] (.+) has already been downloaded(?: and merged)?"
+        + "|\\[Merger\\] Merging formats into \"(.+)\")$");
+    private static final Pattern DELETED_FILE_PATTERN = Pattern.compile("^Deleting original file (.+) \\(pass -k to keep\\)$");
+    private static final Pattern MOVED_FILE_PATTERN = Pattern.compile("^\\[MoveFiles\\] Moving file \"(.+)\" to \"(.+)\"$");
+
+    private final DownloadProgressScanner progressScanner = new DownloadProgressScanner();
+    private final DownloadProgress progress = new DownloadProgress();
+    private Charset charset = Charset.defaultCharset();
+
+    private volatile RunnableProcess proc;
+    private volatile boolean interrupted = false;
 
     private Consumer<RunnableProcess> processStartHandler = p -> {};
     private Consumer<String> processConsoleOutputHandler = line -> {};
-    private Consumer<Float> downloadProgressValueHandler = value -> {};
-    private Consumer<String> downloadProgressStringHandler = str -> {};
+    private Consumer<DownloadProgress> downloadProgressHandler = p -> {};
+    private Consumer<String> downloadProgressStringHandler = null;
     private Runnable onCompleteHandler = () ->{};
     private Runnable onErrorHandler = () ->{};
     private Runnable onTerminationHandler = () ->{};
-    private AtomicInteger attempt = new AtomicInteger(0);
+    private Consumer<Integer> onRetryHandler = attempt ->{};
+    private Consumer<FailureClass> onFailureHandler = failure ->{};
+
+    private RetryScheduler retryScheduler = RetryScheduler.getDefault();
+    private final List<DownloadAttempt> attempts = new CopyOnWriteArrayList<>();
+    private volatile FailureClass lastFailure;
+    private volatile ScheduledFuture<?> pendingRetry;
+    private MetadataCache metadataCache;
+    private PartialFilesPolicy partialFilesPolicy = PartialFilesPolicy.KEEP;
+    private final Set<String> outputFiles = new LinkedHashSet<>();
+    private volatile CompletableFuture<DownloadResult> result = new CompletableFuture<>();
+    private volatile CompletableFuture<Void> terminated = CompletableFuture.completedFuture(null);
+    private long taskStartTime;
 
     public VideoDownloader(){
 
@@ -80,56 +110,240 @@ public class VideoDownloader {
 
     /**
      * Execute downloader with parameters. Use {@link VideoDownloaderCommand}
+     * Failed attempts are retried by {@link RetryScheduler} up to task retries limit.
      * @param vdc
+     * @return handle to await, compose or cancel the task
      */
-    public void execute(VideoDownloaderCommand vdc){
-        attempt.set(1);
+    public DownloadHandle execute(VideoDownloaderCommand vdc){
         interrupted = false;
-        List<String> commandList = vdc.toList();
+        lastFailure = null;
+        attempts.clear();
+        synchronized(outputFiles){
+            outputFiles.clear();
+        }
+        taskStartTime = System.currentTimeMillis();
+        result = new CompletableFuture<>();
+        DownloadHandle handle = new DownloadHandle(this, result);
+        launch(vdc, 1);
+        return handle;
+    }
+
+    protected void launch(VideoDownloaderCommand vdc, int attemptNumber){
+        List<String> commandList = prepareAttempt(vdc, lastFailure).toList();
+        lastFailure = null;
+        long startTime = System.currentTimeMillis();
 
         proc = new RunnableProcess(commandList)
-            .charset(Charset.defaultCharset())
-            .onOutput(this::handleOutput)
-            .onExit(p -> {
+            .charset(charset)
+            .onOutputBytes(this::handleOutput)
+            .onExit(p -> handleExit(vdc, attemptNumber, startTime, p.exitValue()));
+        // destroyed meanwhile (cancel right after execute or a retry racing destroy): either destroy()
+        // has seen the new process or it's destroyed here, so it's never started and its termination completes
+        if (interrupted){
+            proc.destroy();
+            proc.run();
+            return;
+        }
+
+        RunnableProcess startedProc = proc;
+        ProcessRuntime.getDefault().execute(() -> {
+            try{
+                startedProc.run();
+            }catch(RuntimeException ex){
+                // process can't be started (no executable etc.), retry won't help
+                processConsoleOutputHandler.accept(ex.getMessage());
                 if (!interrupted){
-                    if (p.exitValue()==0){
-                        onCompleteHandler.run();
-                        onTerminationHandler.run();
-                    }else{
-                        if (attempt.incrementAndGet() > vdc.getTaskRetries()) {
-                            onErrorHandler.run();
-                            onTerminationHandler.run();
-                        } else {
-                            proc.destroy();
-                            execute(vdc);
-                        }
-                    }
+                    onErrorHandler.run();
+                    onTerminationHandler.run();
                 }
-            });
-
-        new Thread(proc).start();
+                result.completeExceptionally(ex.getCause()!=null ? ex.getCause() : ex);
+            }
+        });
         processStartHandler.accept(proc);
     }
 
-    protected void handleOutput(String line){
-        Matcher mat = DOWNLOAD_PROGRESS_PATTERN.matcher(line);
-        if (mat.find()){
-            downloadProgressValueHandler.accept(Float.valueOf(mat.group(1)));
-            downloadProgressStringHandler.accept(line);
+    /**
+     * Use saved info JSON if metadata cache has it, so the download stage and
+     * retries skip extraction. After HTTP 403 the info is considered stale
+     * (expired media URLs) and the attempt extracts from URL again.
+     * @param vdc task command
+     * @param previousFailure failure of the previous attempt or null
+     * @return attempt command
+     */
+    protected VideoDownloaderCommand prepareAttempt(VideoDownloaderCommand vdc, FailureClass previousFailure){
+        if (metadataCache==null || !vdc.getInfoJsonPath().isEmpty()) return vdc;
+
+        if (previousFailure==FailureClass.FORBIDDEN){
+            metadataCache.invalidate(vdc);
+            return vdc;
+        }
+
+        Path infoFile = metadataCache.getInfoFile(vdc);
+        if (infoFile==null) return vdc;
+
+        VideoDownloaderCommand stageCommand = new VideoDownloaderCommand(vdc);
+        stageCommand.setInfoJsonPath(infoFile.toString());
+        return stageCommand;
+    }
+
+    protected void handleExit(VideoDownloaderCommand vdc, int attemptNumber, long startTime, int exitCode){
+        if (interrupted) return;
+        long duration = System.currentTimeMillis() - startTime;
+
+        if (exitCode==0){
+            attempts.add(new DownloadAttempt(attemptNumber, exitCode, null, startTime, duration, -1));
+            onCompleteHandler.run();
+            onTerminationHandler.run();
+            complete(exitCode, null);
+            return;
+        }
+
+        FailureClass failure = lastFailure!=null ? lastFailure : FailureClass.UNKNOWN;
+
+        if (!retryScheduler.shouldRetry(failure, attemptNumber, vdc.getTaskRetries())){
+            attempts.add(new DownloadAttempt(attemptNumber, exitCode, failure, startTime, duration, -1));
+            onErrorHandler.run();
+            onTerminationHandler.run();
+            complete(exitCode, failure);
+            return;
+        }
+
+        long delay = retryScheduler.nextDelay(failure, attemptNumber);
+        attempts.add(new DownloadAttempt(attemptNumber, exitCode, failure, startTime, duration, delay));
+        processConsoleOutputHandler.accept(String.format("attempt %d failed: %s, retry in %.1f s",
+            attemptNumber, failure, delay/1000.0));
+        onRetryHandler.accept(attemptNumber + 1);
+
+        pendingRetry = retryScheduler.schedule(() -> {
+            if (!interrupted) launch(vdc, attemptNumber + 1);
+        }, delay);
+    }
+
+    private void complete(int exitCode, FailureClass failure){
+        List<Path> files = new ArrayList<>();
+        synchronized(outputFiles){
+            outputFiles.forEach(file -> files.add(Paths.get(file)));
+        }
+        result.complete(new DownloadResult(exitCode, failure, attempts, files,
+            taskStartTime, System.currentTimeMillis() - taskStartTime));
+    }
+
+    /**
+     * Follow files written, merged, moved and deleted by the downloader.
+     * @param line console line
+     */
+    protected void collectOutputFile(String line){
+        Matcher mat = OUTPUT_FILE_PATTERN.matcher(line);
+        synchronized(outputFiles){
+            if (mat.find()){
+                for(int i=1; i<=mat.groupCount(); i++){
+                    if (mat.group(i)!=null) outputFiles.add(mat.group(i));
+                }
+            }else if ((mat = DELETED_FILE_PATTERN.matcher(line)).find()){
+                outputFiles.remove(mat.group(1));
+            }else if ((mat = MOVED_FILE_PATTERN.matcher(line)).find()){
+                outputFiles.remove(mat.group(1));
+                outputFiles.add(mat.group(2));
+            }
+        }
+    }
+
+    /**
+     * Handle raw output line. Progress lines are parsed in place, other lines are decoded
+     * to String only for console output handler.
+     * @param buf line buffer (reused by reader)
+     * @param offset line start
+     * @param length line length
+     */
+    protected void handleOutput(byte[] buf, int offset, int length){
+        if (progressScanner.scan(buf, offset, length, progress)){
+            progress.setLine(buf, offset, length, charset);
+            downloadProgressHandler.accept(progress);
+            if (downloadProgressStringHandler!=null) downloadProgressStringHandler.accept(progress.toString());
             return;
         }
+
+        String line = new String(buf, offset, length, charset);
+        FailureClass failure = FailureClass.classify(line);
+        if (failure!=null){
+            lastFailure = failure;
+            onFailureHandler.accept(failure);
+        }
+        collectOutputFile(line);
+
         processConsoleOutputHandler.accept(line);
     }
 
+    /**
+     * @return finished attempts history of the current task
+     */
+    public List<DownloadAttempt> getAttempts(){
+        return List.copyOf(attempts);
+    }
+
+    /**
+     * Set metadata cache to download from saved info JSON when it's available.
+     * @param metadataCache
+     */
+    public void setMetadataCache(MetadataCache metadataCache){
+        this.metadataCache = metadataCache;
+    }
+
+    /**
+     * Set partial files policy of {@link #destroy()}.
+     * @param partialFilesPolicy
+     */
+    public void setPartialFilesPolicy(PartialFilesPolicy partialFilesPolicy){
+        this.partialFilesPolicy = partialFilesPolicy;
+    }
+
+    public void setRetryScheduler(RetryScheduler retryScheduler){
+        this.retryScheduler = retryScheduler;
+    }
+
     public boolean isAlive(){
         return proc!=null && proc.isAlive();
     }
 
-    public void destroy(){
-        if (isAlive()){
-            interrupted = true;
-            proc.destroy();
+    /**
+     * Stop the process and pending retries, the task result future is cancelled.
+     * Partial files are handled by the downloader policy ({@link PartialFilesPolicy#KEEP} by default).
+     * @return future completed when the process tree has exited
+     */
+    public CompletableFuture<Void> destroy(){
+        return destroy(partialFilesPolicy);
+    }
+
+    /**
+     * Stop the process tree and pending retries, the task result future is cancelled.
+     * When all processes have exited, partial files are deleted according to the policy
+     * and reclaimed space is reported to the message handler.
+     * @param policy partial files policy
+     * @return future completed when the process tree has exited
+     */
+    public CompletableFuture<Void> destroy(PartialFilesPolicy policy){
+        if (interrupted) return terminated;
+        interrupted = true;
+        ScheduledFuture<?> retry = pendingRetry;
+        if (retry!=null) retry.cancel(false);
+        // not started process is never started by RunnableProcess
+        RunnableProcess p = proc;
+        CompletableFuture<Void> terminated = p!=null
+            ? p.destroy()
+            : CompletableFuture.completedFuture(null);
+        this.terminated = terminated;
+        result.cancel(false);
+
+        if (policy==PartialFilesPolicy.KEEP) return terminated;
+        List<Path> files = new ArrayList<>();
+        synchronized(outputFiles){
+            outputFiles.forEach(file -> files.add(Paths.get(file)));
         }
+        terminated.thenRun(() -> {
+            long reclaimed = policy.cleanup(files);
+            if (reclaimed>0) processConsoleOutputHandler.accept("partial files removed, " + Units.formatSize(reclaimed) + " reclaimed");
+        });
+        return terminated;
     }
 
     public void onStart(Consumer<RunnableProcess> processStartHandler){
@@ -140,10 +354,19 @@ public class VideoDownloader {
         this.processConsoleOutputHandler = processConsoleOutputHandler;
     }
 
-    public void onDownloadProgressValue(Consumer<Float> downloadProgressValueHandler){
-        this.downloadProgressValueHandler = downloadProgressValueHandler;
+    /**
+     * Progress handler. {@link DownloadProgress} instance is reused for every line,
+     * don't keep the reference outside of handler.
+     * @param downloadProgressHandler
+     */
+    public void onDownloadProgress(Consumer<DownloadProgress> downloadProgressHandler){
+        this.downloadProgressHandler = downloadProgressHandler;
     }
 
+    /**
+     * Progress line handler. Line is decoded only when this handler is set.
+     * @param downloadProgressStringHandler
+     */
     public void onDownloadProgressString(Consumer<String> downloadProgressStringHandler){
         this.downloadProgressStringHandler = downloadProgressStringHandler;
     }
@@ -160,4 +383,21 @@ public class VideoDownloader {
         this.onTerminationHandler = onTerminationHandler;
     }
 
+    /**
+     * Retry handler, receives the number of the next attempt.
+     * @param onRetryHandler
+     */
+    public void onRetry(Consumer<Integer> onRetryHandler){
+        this.onRetryHandler = onRetryHandler;
+    }
+
+    /**
+     * Failure handler, called for every error line of the output with its class,
+     * including errors the downloader retries by itself.
+     * @param onFailureHandler
+     */
+    public void onFailure(Consumer<FailureClass> onFailureHandler){
+        this.onFailureHandler = onFailureHandler;
+    }
+
 }
@@ -24,6 +24,7 @@
 
 package com.cyber.ytdl;
 
+import com.cyber.util.ApplicationProperties;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -38,6 +39,8 @@ import java.util.stream.Stream;
  */
 public class VideoDownloaderCommand{
 
+    private static final String PARAM_PREFIX = "param.";
+
     private String downloaderExe = "yt-dlp";
     private String url = "";
     private String outputPath = "";
@@ -53,6 +56,8 @@ public class VideoDownloaderCommand{
     private int extractorRetries = 10;
     private int taskRetries = 10;
     private String proxyUrl = "";
+    private String infoJsonPath = "";
+    private DownloadPriority priority = DownloadPriority.NORMAL;
 
     private LinkedHashMap<String,String> params;
 
@@ -79,6 +84,7 @@ public class VideoDownloaderCommand{
         sourceFormat = source.getSourceFormat();
         compatibleFormat = source.isCompatibleFormat();
         playlistAllowed = source.isPlaylistAllowed();
+        subtitlesAllowed = source.isSubtitlesAllowed();
         thumbnailAllowed = source.isThumbnailAllowed();
         debug = source.isDebug();
         socketTimeout = source.getSocketTimeout();
@@ -86,12 +92,51 @@ public class VideoDownloaderCommand{
         extractorRetries = source.getExtractorRetries();
         taskRetries = source.getTaskRetries();
         proxyUrl = source.getProxyUrl();
+        infoJsonPath = source.getInfoJsonPath();
+        priority = source.getPriority();
 
         params.putAll(source.getParams());
     }
 
+    /**
+     * Build downloader command line. If info JSON path is set, this is a download
+     * stage command: downloader loads extracted info from the file instead of URL.
+     * @return command line
+     * @see #setInfoJsonPath(java.lang.String)
+     */
     public List<String> toList(){
+        return infoJsonPath.isEmpty()
+            ? buildList(List.of(), List.of(url))
+            : buildList(List.of("--load-info-json", infoJsonPath), List.of());
+    }
+
+    /**
+     * Build batch command line: the same options, but URLs are read from stdin,
+     * errors of one URL don't abort the rest and every finished URL is printed
+     * (--print implies --quiet, so it's turned off).
+     * @return command line
+     * @see #getBatchKey()
+     */
+    public List<String> toBatchList(){
+        return buildList(List.of("--ignore-errors", "--no-quiet", "--print", BatchDownloader.FINISHED_URL_PRINT, "--batch-file", "-"), List.of());
+    }
+
+    /**
+     * Commands with equal batch keys differ only by URL and can be downloaded
+     * by one batch process.
+     * @return batch key
+     */
+    public String getBatchKey(){
+        return String.join("\n", toBatchList());
+    }
+
+    /**
+     * @param sourceOptions source options (info JSON, batch file) after other options
+     * @param sources URLs at the end of command line, after "--" so a URL is never taken for an option
+     */
+    protected List<String> buildList(List<String> sourceOptions, List<String> sources){
         List<String> cmd = new ArrayList<>();
+        LinkedHashMap<String,String> options = new LinkedHashMap<>();
 
         // executable at first place
         cmd.add(downloaderExe);
@@ -108,54 +153,163 @@ public class VideoDownloaderCommand{
 
         // use proxy
         if (!proxyUrl.isBlank()){
-            add("--proxy", getProxyUrl());
+            options.put("--proxy", getProxyUrl());
         }
 
         // get source format selection string
-        add("-f", sourceFormat.getFormatString(compatibleFormat));
-        
+        options.put("-f", sourceFormat.getFormatString(compatibleFormat));
+
         // output files pattern (with path)
-        add("-o", VideoDownloader.getOutputFilesPattern(outputPath, fileNamesPattern));
+        options.put("-o", VideoDownloader.getOutputFilesPattern(outputPath, fileNamesPattern));
 
         if (socketTimeout>0) {
-            add("--socket-timeout", String.valueOf(socketTimeout));
+            options.put("--socket-timeout", String.valueOf(socketTimeout));
         }
 
         if (extractorRetries>0) {
-            add("--extractor-retries", String.valueOf(extractorRetries));
+            options.put("--extractor-retries", String.valueOf(extractorRetries));
         }
 
         if (connectRetries>0) {
-            add("--retries", String.valueOf(connectRetries));
+            options.put("--retries", String.valueOf(connectRetries));
         }
 
         if (playlistAllowed){
-            add("--download-archive",
+            options.put("--download-archive",
                 VideoDownloader.getOutputFilesPattern(outputPath, genDownloadArchiveFilename(url)));
         }else{
-            add("--no-playlist");
+            options.put("--no-playlist", "");
         }
 
         // get all subtitles
         if (subtitlesAllowed){
-            add("--all-subs");
+            options.put("--all-subs", "");
         }
 
         if (thumbnailAllowed){
-            add("--write-thumbnail --embed-thumbnail");
+            options.put("--write-thumbnail", "");
+            options.put("--embed-thumbnail", "");
         }
 
-        params.entrySet().stream()
+        // one machine-readable progress line per update, see DownloadProgressScanner
+        options.put("--newline", "");
+        options.put("--progress-template", DownloadProgressScanner.PROGRESS_TEMPLATE);
+
+        // custom params override defaults
+        options.putAll(params);
+
+        options.entrySet().stream()
             .flatMap(e -> Stream.of(e.getKey(), e.getValue()))
             .filter(Predicate.not(String::isEmpty))
             .forEach(cmd::add);
 
-        // url at last place
+        // source at last place
+        cmd.addAll(sourceOptions);
+        if (!sources.isEmpty()){
+            cmd.add("--");
+            cmd.addAll(sources);
+        }
+
+        return cmd;
+    }
+
+    /**
+     * Build metadata extraction command. Downloader prints single info JSON
+     * (-J) to stdout and downloads nothing.
+     * @return command line
+     */
+    public List<String> toExtractList(){
+        List<String> cmd = new ArrayList<>();
+
+        cmd.add(downloaderExe);
+
+        if (!proxyUrl.isBlank()){
+            cmd.add("--proxy");
+            cmd.add(proxyUrl);
+        }
+
+        if (socketTimeout>0){
+            cmd.add("--socket-timeout");
+            cmd.add(String.valueOf(socketTimeout));
+        }
+
+        if (extractorRetries>0){
+            cmd.add("--extractor-retries");
+            cmd.add(String.valueOf(extractorRetries));
+        }
+
+        cmd.add(playlistAllowed ? "--yes-playlist" : "--no-playlist");
+        cmd.add("-J");
+        cmd.add("--");
         cmd.add(url);
 
         return cmd;
     }
 
+    /**
+     * Export command fields as flat string map (used for persistence).
+     * Extra params are stored with "param." key prefix.
+     * @return fields map
+     * @see #fromFieldMap(java.util.Map)
+     */
+    public Map<String,String> toFieldMap(){
+        Map<String,String> map = new LinkedHashMap<>();
+
+        map.put("downloader", downloaderExe);
+        map.put("url", url);
+        map.put("output_path", outputPath);
+        map.put("file_names_pattern", fileNamesPattern);
+        map.put("quality", getQuality());
+        map.put("compatibility", String.valueOf(compatibleFormat));
+        map.put("allow_playlist", String.valueOf(playlistAllowed));
+        map.put("allow_subtitles", String.valueOf(subtitlesAllowed));
+        map.put("allow_thumbnails", String.valueOf(thumbnailAllowed));
+        map.put("debug", String.valueOf(debug));
+        map.put("socket_timeout", String.valueOf(socketTimeout));
+        map.put("connect_retries", String.valueOf(connectRetries));
+        map.put("extractor_retries", String.valueOf(extractorRetries));
+        map.put("task_retries", String.valueOf(taskRetries));
+        map.put("proxy", proxyUrl);
+        map.put("priority", priority.toString());
+
+        params.forEach((name, value) -> map.put(PARAM_PREFIX + name, value));
+
+        return map;
+    }
+
+    /**
+     * Create command from fields map. Missing fields have default values.
+     * @param map fields map
+     * @return new command
+     * @see #toFieldMap()
+     */
+    public static VideoDownloaderCommand fromFieldMap(Map<String,String> map){
+        VideoDownloaderCommand vdc = new VideoDownloaderCommand();
+
+        vdc.setDownloaderExe( map.getOrDefault("downloader", vdc.getDownloaderExe()));
+        vdc.setUrl( map.getOrDefault("url", vdc.getUrl()));
+        vdc.setOutputPath( map.getOrDefault("output_path", vdc.getOutputPath()));
+        vdc.setFileNamesPattern( map.getOrDefault("file_names_pattern", vdc.getFileNamesPattern()));
+        vdc.setQuality( map.getOrDefault("quality", vdc.getQuality()));
+        vdc.setCompatibleFormat( Boolean.parseBoolean( map.getOrDefault("compatibility", "false")));
+        vdc.setPlaylistAllowed( Boolean.parseBoolean( map.getOrDefault("allow_playlist", "false")));
+        vdc.setSubtitlesAllowed( Boolean.parseBoolean( map.getOrDefault("allow_subtitles", "false")));
+        vdc.setThumbnailAllowed( Boolean.parseBoolean( map.getOrDefault("allow_thumbnails", "false")));
+        vdc.setDebug( Boolean.parseBoolean( map.getOrDefault("debug", "false")));
+        vdc.setSocketTimeout( Integer.parseInt( map.getOrDefault("socket_timeout", String.valueOf(vdc.getSocketTimeout()))));
+        vdc.setConnectRetries( Integer.parseInt( map.getOrDefault("connect_retries", String.valueOf(vdc.getConnectRetries()))));
+        vdc.setExtractorRetries( Integer.parseInt( map.getOrDefault("extractor_retries", String.valueOf(vdc.getExtractorRetries()))));
+        vdc.setTaskRetries( Integer.parseInt( map.getOrDefault("task_retries", String.valueOf(vdc.getTaskRetries()))));
+        vdc.setProxyUrl( map.getOrDefault("proxy", vdc.getProxyUrl()));
+        vdc.setPriority( DownloadPriority.parse(map.getOrDefault("priority", ""), vdc.getPriority()));
+
+        map.forEach((key, value) -> {
+            if (key.startsWith(PARAM_PREFIX)) vdc.getParams().put(key.substring(PARAM_PREFIX.length()), value);
+        });
+
+        return vdc;
+    }
+
     public String printInfo(){
         StringBuilder sb = new StringBuilder();
 
@@ -166,6 +320,7 @@ public class VideoDownloaderCommand{
 
         if (compatibleFormat) sb.append("compatible format: true\n");
         if (playlistAllowed) sb.append("playlist allowed: true\n");
+        if (!infoJsonPath.isEmpty()) sb.append("info json: ").append(infoJsonPath).append("\n");
         if (!proxyUrl.isBlank()) sb.append("proxy: ").append(proxyUrl).append("\n");
 
         if (debug){
@@ -331,4 +486,51 @@ public class VideoDownloaderCommand{
         this.proxyUrl = proxyUrl;
     }
 
+    public String getInfoJsonPath() {
+        return infoJsonPath;
+    }
+
+    /**
+     * Set extracted info JSON file for download stage command, empty string to download by URL.
+     * The path isn't persisted by {@link #toFieldMap()}.
+     * @param infoJsonPath
+     */
+    public void setInfoJsonPath(String infoJsonPath) {
+        this.infoJsonPath = infoJsonPath==null ? "" : infoJsonPath;
+    }
+
+    public DownloadPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Set queue priority class of the task, it doesn't change the command line.
+     * @param priority
+     */
+    public void setPriority(DownloadPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Set defaults from application properties, shared by GUI and headless modes.
+     * @param properties
+     * @param prefix properties key prefix like "frame.main"
+     */
+    public void applyProperties(ApplicationProperties properties, String prefix){
+        setDebug( properties.getBool(prefix + ".debug", isDebug()));
+        setSocketTimeout( properties.getInt(prefix + ".socket_timeout", getSocketTimeout()));
+        setConnectRetries( properties.getInt(prefix + ".connect_retries", getConnectRetries()));
+        setExtractorRetries( properties.getInt(prefix + ".extractor_retries", getExtractorRetries()));
+        setTaskRetries( properties.getInt(prefix + ".task_retries", getTaskRetries()));
+        setQuality( properties.getProperty(prefix + ".quality", getQuality()));
+        setDownloaderExe( properties.getProperty(prefix + ".downloader", getDownloaderExe()));
+        setCompatibleFormat( properties.getBool(prefix + ".compatibility", isCompatibleFormat()));
+        setPlaylistAllowed( properties.getBool(prefix + ".allow_playlist", isPlaylistAllowed()));
+        setSubtitlesAllowed( properties.getBool(prefix + ".allow_subtitles", isSubtitlesAllowed()));
+        setThumbnailAllowed( properties.getBool(prefix + ".allow_thumbnails", isThumbnailAllowed()));
+        setOutputPath( properties.getProperty(prefix + ".output_path", getOutputPath()));
+        setFileNamesPattern( properties.getProperty(prefix + ".file_names_pattern", getFileNamesPattern()));
+        setProxyUrl( properties.getProperty( prefix + ".proxy", ""));
+    }
+
 }
@@ -63,6 +63,29 @@ public enum VideoDownloaderSourceFormat {
         return height > 0;
     }
 
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * Check if the source offers this quality.
+     * @param maxHeight max available video height of the source
+     * @return true for audio only and best formats or if source height is enough
+     */
+    public boolean isAvailable(int maxHeight){
+        return this==BEST || !hasVideo() || height<=maxHeight;
+    }
+
+    /**
+     * @param maxHeight max available video height of the source
+     * @return formats available for the source
+     */
+    public static VideoDownloaderSourceFormat[] getAvailable(int maxHeight){
+        return Stream.of(values())
+            .filter(f -> f.isAvailable(maxHeight))
+            .toArray(VideoDownloaderSourceFormat[]::new);
+    }
+
     public static VideoDownloaderSourceFormat getByTitle(String title){
         for(VideoDownloaderSourceFormat e: values()){
             if (e.title.equals(title)) return e;
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Video or playlist info extracted by downloader (-J JSON).
+ *
+ * @author Kirill Bereznyakov
+ */
+public class VideoMetadata {
+
+    private final Map<String,Object> info;
+
+    public VideoMetadata(Map<String,Object> info){
+        this.info = info;
+    }
+
+    public Map<String,Object> getInfo(){
+        return info;
+    }
+
+    public String getId(){
+        return getString(info, "id");
+    }
+
+    public String getTitle(){
+        return getString(info, "title");
+    }
+
+    public String getChannel(){
+        String channel = getString(info, "channel");
+        return channel.isEmpty() ? getString(info, "uploader") : channel;
+    }
+
+    /**
+     * @return duration in seconds or 0 if unknown
+     */
+    public double getDuration(){
+        return getNumber(info, "duration");
+    }
+
+    public boolean isPlaylist(){
+        return "playlist".equals(info.get("_type"));
+    }
+
+    /**
+     * @return playlist entries info or empty list for single video
+     */
+    public List<Map<String,Object>> getEntries(){
+        return getList(info, "entries").stream()
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * @return max available video height or 0 for audio only source
+     */
+    public int getMaxHeight(){
+        if (isPlaylist()){
+            return getEntries().stream()
+                .mapToInt(e -> new VideoMetadata(e).getMaxHeight())
+                .max().orElse(0);
+        }
+        return getList(info, "formats").stream()
+            .filter(VideoMetadata::hasVideo)
+            .mapToInt(f -> (int)getNumber(f, "height"))
+            .max().orElse(0);
+    }
+
+    /**
+     * Estimate downloaded size for source format (playlist entries are summed up).
+     * @param format source format
+     * @return size in bytes or -1 if unknown
+     */
+    public long estimateSize(VideoDownloaderSourceFormat format){
+        if (isPlaylist()){
+            long total = 0;
+            for(Map<String,Object> entry: getEntries()){
+                long size = new VideoMetadata(entry).estimateSize(format);
+                if (size<0) return -1;
+                total += size;
+            }
+            return total;
+        }
+
+        List<Map<String,Object>> formats = getList(info, "formats");
+        Map<String,Object> audio = null;
+        Map<String,Object> video = null;
+
+        for(Map<String,Object> f: formats){
+            if (hasVideo(f)){
+                if (format.hasVideo() && getNumber(f, "height")<=format.getHeight() && rank(f, "height")>rank(video, "height")){
+                    video = f;
+                }
+            }else if (!"none".equals(f.get("acodec")) && rank(f, "abr")>rank(audio, "abr")){
+                audio = f;
+            }
+        }
+
+        long audioSize = audio!=null ? getSize(audio) : 0;
+        if (!format.hasVideo()) return audio!=null ? audioSize : -1;
+        if (video==null) return -1;
+
+        long videoSize = getSize(video);
+        if (videoSize<0 || audioSize<0) return -1;
+        return "none".equals(video.get("acodec")) ? videoSize + audioSize : videoSize;
+    }
+
+    /**
+     * Compare formats by main key, then by bitrate.
+     */
+    private static double rank(Map<String,Object> f, String key){
+        if (f==null) return -1;
+        return getNumber(f, key)*1e6 + getNumber(f, "tbr");
+    }
+
+    private long getSize(Map<String,Object> f){
+        double size = getNumber(f, "filesize");
+        if (size<=0) size = getNumber(f, "filesize_approx");
+        if (size<=0) size = getNumber(f, "tbr") * 1000 / 8 * getDuration();
+        return size>0 ? (long)size : -1;
+    }
+
+    private static boolean hasVideo(Map<String,Object> f){
+        Object vcodec = f.get("vcodec");
+        return vcodec!=null && !"none".equals(vcodec) && getNumber(f, "height")>0;
+    }
+
+    static String getString(Map<String,Object> map, String key){
+        Object value = map.get(key);
+        return value==null ? "" : value.toString();
+    }
+
+    static double getNumber(Map<String,Object> map, String key){
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number)value).doubleValue() : 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    static List<Map<String,Object>> getList(Map<String,Object> map, String key){
+        Object value = map.get(key);
+        return value instanceof List ? (List<Map<String,Object>>)value : Collections.emptyList();
+    }
+
+    @Override
+    public String toString() {
+        return getTitle() + (getChannel().isEmpty() ? "" : " [" + getChannel() + "]");
+    }
+
+}
@@ -0,0 +1,616 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl.api;
+
+import com.cyber.util.Json;
+import com.cyber.ytdl.ConcurrencyController;
+import com.cyber.ytdl.DownloadEvent;
+import com.cyber.ytdl.DownloadEventStream;
+import com.cyber.ytdl.DownloadJob;
+import com.cyber.ytdl.DownloadJobState;
+import com.cyber.ytdl.DownloadQueue;
+import com.cyber.ytdl.DownloadStage;
+import com.cyber.ytdl.MetadataCache;
+import com.cyber.ytdl.VideoDownloaderCommand;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local HTTP API of the download queue, JDK HttpServer without dependencies.
+ * <pre>
+ * GET    /api/jobs         list jobs
+ * POST   /api/jobs         submit a command object (or array of objects), fields as
+ *                          {@link VideoDownloaderCommand#toFieldMap()}, missing fields are defaults
+ * GET    /api/jobs/{id}    job
+ * DELETE /api/jobs/{id}    cancel job
+ * POST   /api/jobs/{id}/pause   pause job, partial files are kept
+ * POST   /api/jobs/{id}/resume  queue paused job again
+ * GET    /api/events       server-sent events: "jobs" snapshot, then "batch" arrays of events,
+ *                          "resync" jobs snapshot after batches skipped for a slow client
+ * GET    /api/concurrency  limits, throughput and recent decisions of adaptive concurrency
+ * </pre>
+ * Downloader executable and extra yt-dlp params can't be set over HTTP, url must be
+ * http(s) URL, output_path must be inside the default output directory and
+ * file_names_pattern can't leave it.
+ * <p>
+ * Requests must be addressed to the server by loopback name or listen address
+ * (Host header) and come from no web page or a page of the server itself (Origin
+ * header), so other sites can't post jobs from the browser, with DNS rebinding either.
+ * <p>
+ * Events are collected and sent in batches: every batch is serialized once and
+ * put to the bounded queue of every watcher, the batch thread never writes. Each
+ * watcher has its own writer thread, because a write to a client which stopped
+ * reading blocks and JDK HttpServer has no write timeout. A watcher with the full
+ * queue skips batches, gets a jobs snapshot to resync and is dropped when it lags
+ * too much: its exchange is closed by its own writer once the blocked write returns,
+ * so slow clients don't hold others. The number of watchers (including dropped ones
+ * whose writer is still blocked) is limited.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class HttpApiServer {
+
+    public static final int DEFAULT_BATCH_INTERVAL_MS = 250;
+
+    private static final int HEARTBEAT_INTERVAL_MS = 15000;
+    private static final int MAX_SKIPPED_BATCHES = 40;
+    private static final int MAX_QUEUED_BATCHES = 8;
+    private static final int MAX_WATCHERS = 64;
+    private static final byte[] RESYNC = new byte[0];
+    private static final byte[] CLOSE = new byte[0];
+    private static final int EVENT_BUFFER_SIZE = 4096;
+    private static final String JOBS_PATH = "/api/jobs";
+    private static final String EVENTS_PATH = "/api/events";
+    private static final String CONCURRENCY_PATH = "/api/concurrency";
+    private static final Set<String> LOOPBACK_HOSTS = Set.of("localhost", "127.0.0.1", "[::1]");
+
+    private final DownloadQueue queue;
+    private final VideoDownloaderCommand defaultTask;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ExecutorService writerExecutor;
+    private final ScheduledExecutorService batchExecutor;
+    private final List<Watcher> watchers = new CopyOnWriteArrayList<>();
+    private final Semaphore writerSlots = new Semaphore(MAX_WATCHERS);
+    private final int batchIntervalMs;
+
+    private final Object batchLock = new Object();
+    private List<Map<String,Object>> batchEvents = new ArrayList<>();
+    private Map<Long,Map<String,Object>> batchProgress = new LinkedHashMap<>();
+    private long lastSendTime = System.currentTimeMillis();
+    private Flow.Subscription subscription;
+
+    public HttpApiServer(DownloadQueue queue, VideoDownloaderCommand defaultTask, InetSocketAddress address) throws IOException{
+        this(queue, defaultTask, address, DEFAULT_BATCH_INTERVAL_MS);
+    }
+
+    /**
+     * @param queue
+     * @param defaultTask command template for submitted jobs
+     * @param address listen address, loopback is recommended
+     * @param batchIntervalMs events batch interval
+     * @throws IOException
+     */
+    public HttpApiServer(DownloadQueue queue, VideoDownloaderCommand defaultTask, InetSocketAddress address, int batchIntervalMs) throws IOException{
+        this.queue = queue;
+        this.defaultTask = defaultTask;
+        this.batchIntervalMs = batchIntervalMs;
+        this.server = HttpServer.create(address, 0);
+        this.requestExecutor = Executors.newFixedThreadPool(4, daemonThreads("http-api"));
+        this.writerExecutor = Executors.newCachedThreadPool(daemonThreads("http-api-sse"));
+        this.batchExecutor = Executors.newSingleThreadScheduledExecutor(daemonThreads("http-api-batch"));
+
+        server.setExecutor(requestExecutor);
+        server.createContext(JOBS_PATH, checked(this::handleJobs));
+        server.createContext(EVENTS_PATH, checked(this::handleEvents));
+        server.createContext(CONCURRENCY_PATH, checked(this::handleConcurrency));
+    }
+
+    public void start(){
+        queue.getEvents().subscribe(new EventCollector(), EVENT_BUFFER_SIZE, DownloadEventStream.Overflow.COALESCE);
+        batchExecutor.scheduleWithFixedDelay(this::sendBatch, batchIntervalMs, batchIntervalMs, TimeUnit.MILLISECONDS);
+        server.start();
+    }
+
+    public void stop(){
+        server.stop(0);
+        Flow.Subscription s = subscription;
+        if (s!=null) s.cancel();
+        batchExecutor.shutdownNow();
+        watchers.forEach(Watcher::drop);
+        writerExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+    }
+
+    public InetSocketAddress getAddress(){
+        return server.getAddress();
+    }
+
+    public int getWatcherCount(){
+        return watchers.size();
+    }
+
+    /**
+     * Reject cross-site and DNS rebinding requests, answer unexpected errors with 500.
+     */
+    private HttpHandler checked(HttpHandler handler){
+        return exchange -> {
+            try{
+                if (!isAllowedHost(exchange.getRequestHeaders().getFirst("Host"))){
+                    send(exchange, 403, error("host not allowed"));
+                }else if (!isAllowedOrigin(exchange.getRequestHeaders().getFirst("Origin"))){
+                    send(exchange, 403, error("origin not allowed"));
+                }else{
+                    handler.handle(exchange);
+                }
+            }catch(RuntimeException ex){
+                System.err.println("http api error: " + ex);
+                // response of SSE stream is already started
+                if (exchange.getResponseCode()<0){
+                    send(exchange, 500, error(String.valueOf(ex)));
+                }else{
+                    exchange.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @param host Host header: loopback name or listen address, port is optional
+     */
+    protected boolean isAllowedHost(String host){
+        if (host==null) return false;
+        String name = host.toLowerCase();
+        String portSuffix = ":" + getAddress().getPort();
+        if (name.endsWith(portSuffix)) name = name.substring(0, name.length() - portSuffix.length());
+        InetAddress address = getAddress().getAddress();
+        String listenHost = address instanceof Inet6Address ? "[" + address.getHostAddress() + "]" : address.getHostAddress();
+        return LOOPBACK_HOSTS.contains(name) || name.equals(listenHost);
+    }
+
+    /**
+     * @param origin Origin header, absent for non-browser clients
+     */
+    protected boolean isAllowedOrigin(String origin){
+        if (origin==null) return true;
+        try{
+            URI uri = new URI(origin);
+            return "http".equals(uri.getScheme())
+                && uri.getPort()==getAddress().getPort()
+                && isAllowedHost(uri.getRawAuthority());
+        }catch(URISyntaxException ex){
+            return false;
+        }
+    }
+
+    protected void handleJobs(HttpExchange exchange) throws IOException{
+        try{
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            String idPart = path.length()>JOBS_PATH.length() ? path.substring(JOBS_PATH.length()+1) : "";
+
+            if (idPart.isEmpty()){
+                if (method.equals("GET")){
+                    send(exchange, 200, jobsSnapshot());
+                }else if (method.equals("POST")){
+                    send(exchange, 201, submit(Json.parse(readBody(exchange))));
+                }else{
+                    send(exchange, 405, error("method not allowed"));
+                }
+                return;
+            }
+
+            String[] parts = idPart.split("/", 2);
+            String action = parts.length>1 ? parts[1] : "";
+            DownloadJob job = findJob(Long.parseLong(parts[0]));
+            if (job==null){
+                send(exchange, 404, error("job not found"));
+            }else if (!action.isEmpty()){
+                if (!method.equals("POST")){
+                    send(exchange, 405, error("method not allowed"));
+                }else if (action.equals("pause")){
+                    send(exchange, queue.pause(job) ? 200 : 409, toJson(job));
+                }else if (action.equals("resume")){
+                    send(exchange, queue.resume(job) ? 200 : 409, toJson(job));
+                }else{
+                    send(exchange, 404, error("unknown action"));
+                }
+            }else if (method.equals("GET")){
+                send(exchange, 200, toJson(job));
+            }else if (method.equals("DELETE")){
+                queue.cancel(job);
+                send(exchange, 200, toJson(job));
+            }else{
+                send(exchange, 405, error("method not allowed"));
+            }
+        }catch(IllegalArgumentException ex){
+            // bad JSON, number or field value
+            send(exchange, 400, error(ex.getMessage()));
+        }
+    }
+
+    protected void handleEvents(HttpExchange exchange) throws IOException{
+        if (!exchange.getRequestMethod().equals("GET")){
+            send(exchange, 405, error("method not allowed"));
+            return;
+        }
+        if (!writerSlots.tryAcquire()){
+            send(exchange, 503, error("too many event watchers"));
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        // the exchange stays open, the snapshot and batches are written by the watcher thread
+        Watcher watcher = new Watcher(exchange);
+        watchers.add(watcher);
+        try{
+            writerExecutor.execute(watcher::writeLoop);
+        }catch(RejectedExecutionException ex){
+            // server is stopping
+            watchers.remove(watcher);
+            writerSlots.release();
+            exchange.close();
+        }
+    }
+
+    protected void handleConcurrency(HttpExchange exchange) throws IOException{
+        if (!exchange.getRequestMethod().equals("GET")){
+            send(exchange, 405, error("method not allowed"));
+            return;
+        }
+        ConcurrencyController c = queue.getConcurrencyController();
+        Map<String,Object> map = new LinkedHashMap<>();
+        map.put("adaptive", c!=null);
+        map.put("max_parallel", queue.getMaxParallel());
+        map.put("max_per_host", queue.getMaxPerHost());
+        map.put("running", queue.getRunningCount());
+        if (c!=null){
+            map.put("limit", c.getLimit(queue.getMaxParallel()));
+            map.put("throughput", Math.round(c.getThroughput()));
+            map.put("increases", c.getIncreaseCount());
+            map.put("decreases", c.getDecreaseCount());
+            Map<String,Object> hosts = new LinkedHashMap<>();
+            c.getHostLimits().forEach((host, limit) -> {
+                Map<String,Object> h = new LinkedHashMap<>();
+                h.put("limit", c.getHostLimit(host, queue.getMaxPerHost()));
+                h.put("throughput", Math.round(c.getThroughput(host)));
+                hosts.put(host, h);
+            });
+            map.put("hosts", hosts);
+            List<Object> decisions = new ArrayList<>();
+            for(ConcurrencyController.Decision d: c.getDecisions()){
+                Map<String,Object> m = new LinkedHashMap<>();
+                m.put("time", d.getTime());
+                m.put("host", d.getHost());
+                m.put("action", d.getAction().toString());
+                m.put("limit", d.getLimit());
+                m.put("throughput", Math.round(d.getThroughput()));
+                m.put("reason", d.getReason());
+                decisions.add(m);
+            }
+            map.put("decisions", decisions);
+        }
+        send(exchange, 200, map);
+    }
+
+    private Object submit(Object body){
+        if (body instanceof List){
+            List<Object> result = new ArrayList<>();
+            for(Object item: (List<?>)body) result.add(submit(item));
+            return result;
+        }
+        if (!(body instanceof Map)) throw new IllegalArgumentException("JSON object expected");
+
+        Map<String,String> fields = defaultTask.toFieldMap();
+        ((Map<?,?>)body).forEach((key, value) -> {
+            String name = String.valueOf(key);
+            if (name.equals("downloader") || name.startsWith("param.")) return;
+            fields.put(name, String.valueOf(value));
+        });
+        VideoDownloaderCommand vdc = VideoDownloaderCommand.fromFieldMap(fields);
+        if (vdc.getUrl().isBlank()) throw new IllegalArgumentException("url is required");
+        if (!MetadataCache.isFetchableUrl(vdc.getUrl())) throw new IllegalArgumentException("url must be http(s) URL");
+        vdc.setOutputPath(checkOutputPath(vdc.getOutputPath()));
+        checkFileNamesPattern(vdc.getFileNamesPattern());
+        return toJson(queue.submit(vdc));
+    }
+
+    private List<Object> jobsSnapshot(){
+        List<Object> list = new ArrayList<>();
+        queue.getJobs().forEach(job -> list.add(toJson(job)));
+        return list;
+    }
+
+    /**
+     * @param outputPath absolute or relative to the default output directory
+     * @return absolute output path inside the default output directory
+     */
+    private String checkOutputPath(String outputPath){
+        Path base = Paths.get(defaultTask.getOutputPath()).toAbsolutePath().normalize();
+        Path path = base.resolve(outputPath).normalize();
+        if (!path.startsWith(base)) throw new IllegalArgumentException("output_path must be inside " + base);
+        return path.toString();
+    }
+
+    private static void checkFileNamesPattern(String pattern){
+        if (pattern.startsWith("/") || pattern.startsWith("\\") || pattern.matches("^[A-Za-z]:.*")){
+            throw new IllegalArgumentException("file_names_pattern must be relative");
+        }
+        for(String segment: pattern.split("[/\\\\]")){
+            if (segment.equals("..")) throw new IllegalArgumentException("file_names_pattern can't contain ..");
+        }
+    }
+
+    private DownloadJob findJob(long id){
+        return queue.getJobs().stream()
+            .filter(job -> job.getId()==id)
+            .findFirst()
+            .orElse(null);
+    }
+
+    protected Map<String,Object> toJson(DownloadJob job){
+        Map<String,Object> map = new LinkedHashMap<>();
+        map.put("id", job.getId());
+        map.put("url", job.getUrl());
+        map.put("title", job.getTitle());
+        map.put("state", job.getState().toString());
+        map.put("priority", job.getPriority().toString());
+        DownloadStage stage = job.getStage();
+        map.put("stage", stage!=null ? stage.toString() : null);
+        map.put("percent", job.getPercent());
+        map.put("speed", job.getSpeed());
+        map.put("eta", job.getEta());
+        map.put("attempt", job.getAttempt());
+        map.put("size", job.getEstimatedSize());
+        return map;
+    }
+
+    /**
+     * Convert event to JSON object, progress is coalesced per job within a batch.
+     */
+    protected void collect(DownloadEvent event){
+        Map<String,Object> map = new LinkedHashMap<>();
+        map.put("job", event.getJobId());
+        map.put("time", event.getTime());
+
+        if (event instanceof DownloadEvent.Progress){
+            DownloadEvent.Progress p = (DownloadEvent.Progress)event;
+            map.put("type", "progress");
+            map.put("percent", p.getOverallPercent());
+            map.put("downloaded", p.getProgress().getDownloadedBytes());
+            map.put("total", p.getProgress().getTotalBytes());
+            map.put("speed", p.getProgress().getSpeed());
+            map.put("eta", event.getJob().getEta());
+            synchronized(batchLock){
+                batchProgress.put(event.getJobId(), map);
+            }
+            return;
+        }
+
+        if (event instanceof DownloadEvent.Output){
+            map.put("type", "output");
+            map.put("line", ((DownloadEvent.Output)event).getLine());
+        }else if (event instanceof DownloadEvent.StageChanged){
+            map.put("type", "stage");
+            map.put("stage", ((DownloadEvent.StageChanged)event).getStage().toString());
+        }else if (event instanceof DownloadEvent.Retry){
+            map.put("type", "state");
+            map.put("state", DownloadJobState.RETRYING.toString());
+            map.put("attempt", ((DownloadEvent.Retry)event).getAttempt());
+        }else{
+            map.put("type", "state");
+            map.put("state", stateOf(event).toString());
+            map.put("attempt", event.getJob().getAttempt());
+        }
+        synchronized(batchLock){
+            batchEvents.add(map);
+        }
+    }
+
+    /**
+     * @return job state the event reports, the job itself may be ahead already
+     */
+    private static DownloadJobState stateOf(DownloadEvent event){
+        if (event instanceof DownloadEvent.Completed) return DownloadJobState.DONE;
+        if (event instanceof DownloadEvent.Failed) return DownloadJobState.FAILED;
+        if (event instanceof DownloadEvent.Cancelled) return DownloadJobState.CANCELLED;
+        if (event instanceof DownloadEvent.Paused) return DownloadJobState.PAUSED;
+        if (event instanceof DownloadEvent.Resumed) return DownloadJobState.QUEUED;
+        return DownloadJobState.RUNNING;
+    }
+
+    protected void sendBatch(){
+        List<Object> batch = new ArrayList<>();
+        synchronized(batchLock){
+            if (batchEvents.isEmpty() && batchProgress.isEmpty()){
+                if (System.currentTimeMillis()-lastSendTime < HEARTBEAT_INTERVAL_MS) return;
+            }else{
+                batch.addAll(batchEvents);
+                batch.addAll(batchProgress.values());
+                batchEvents = new ArrayList<>();
+                batchProgress = new LinkedHashMap<>();
+            }
+            lastSendTime = System.currentTimeMillis();
+        }
+
+        // serialized once for all watchers
+        byte[] data = batch.isEmpty()
+            ? ": ping\n\n".getBytes(StandardCharsets.UTF_8)
+            : sseMessage("batch", Json.write(batch));
+        for(Watcher watcher: watchers){
+            watcher.send(data);
+        }
+    }
+
+    private static byte[] sseMessage(String event, String data){
+        return ("event: " + event + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String,Object> error(String message){
+        Map<String,Object> map = new LinkedHashMap<>();
+        map.put("error", message);
+        return map;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException{
+        try(InputStream is = exchange.getRequestBody()){
+            return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int code, Object body) throws IOException{
+        byte[] data = Json.write(body).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(code, data.length);
+        try(OutputStream os = exchange.getResponseBody()){
+            os.write(data);
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String name){
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+
+    /**
+     * SSE client connection.
+     */
+    private class Watcher{
+        private final HttpExchange exchange;
+        private final BlockingQueue<byte[]> pending = new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES);
+        private int skipped = 0;
+        private boolean dropped = false;
+
+        Watcher(HttpExchange exchange){
+            this.exchange = exchange;
+        }
+
+        /**
+         * Called by the batch thread, never blocks.
+         */
+        synchronized void send(byte[] data){
+            if (dropped) return;
+            // events of skipped batches are lost, the client gets current jobs instead
+            if (skipped>0 && pending.remainingCapacity()>=2){
+                pending.add(RESYNC);
+                skipped = 0;
+            }
+            if (skipped==0 && pending.offer(data)) return;
+            if (++skipped > MAX_SKIPPED_BATCHES) drop();
+        }
+
+        /**
+         * Stop sending, the writer closes the exchange when its current write returns.
+         */
+        synchronized void drop(){
+            if (dropped) return;
+            dropped = true;
+            watchers.remove(this);
+            pending.clear();
+            pending.offer(CLOSE);
+        }
+
+        void writeLoop(){
+            try{
+                OutputStream os = exchange.getResponseBody();
+                os.write(sseMessage("jobs", Json.write(jobsSnapshot())));
+                os.flush();
+                byte[] data;
+                while((data = pending.take()) != CLOSE){
+                    os.write(data==RESYNC ? sseMessage("resync", Json.write(jobsSnapshot())) : data);
+                    os.flush();
+                }
+            }catch(IOException ex){
+                // client disconnected
+            }catch(InterruptedException ex){
+                // server is stopping
+            }finally{
+                drop();
+                exchange.close();
+                writerSlots.release();
+            }
+        }
+    }
+
+    /**
+     * Queue events subscriber, collects events for the next batch.
+     */
+    private class EventCollector implements Flow.Subscriber<DownloadEvent>{
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            subscription = s;
+            s.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(DownloadEvent event) {
+            collect(event);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            System.err.println("http api events error: " + throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+}
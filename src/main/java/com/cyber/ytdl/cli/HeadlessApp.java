@@ -0,0 +1,208 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl.cli;
+
+import com.cyber.util.ApplicationProperties;
+import com.cyber.ytdl.DownloadJob;
+import com.cyber.ytdl.DownloadJobState;
+import com.cyber.ytdl.DownloadQueue;
+import com.cyber.ytdl.JobJournal;
+import com.cyber.ytdl.MetadataCache;
+import com.cyber.ytdl.VideoDownloaderCommand;
+import com.cyber.ytdl.api.HttpApiServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Download queue without GUI. Uses the same properties, metadata cache and
+ * journal files as the GUI, prints job output and throttled progress to stdout.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class HeadlessApp {
+
+    public static final String PROPERTIES_PREFIX = "frame.main";
+
+    private static final long PROGRESS_PRINT_INTERVAL_MS = 1000;
+
+    private final ApplicationProperties properties;
+    private final DownloadQueue downloadQueue = new DownloadQueue();
+    private final VideoDownloaderCommand defaultTask = new VideoDownloaderCommand();
+    private final MetadataCache metadataCache;
+    private final Map<Long,Long> progressPrinted = new ConcurrentHashMap<>();
+    private final Object idleLock = new Object();
+    private PrintStream out = System.out;
+    private JobJournal jobJournal;
+    private HttpApiServer httpApi;
+    private volatile boolean anyFailed = false;
+
+    public HeadlessApp(ApplicationProperties properties){
+        this.properties = properties;
+        this.metadataCache = new MetadataCache(resolveAppFile(MetadataCache.DEFAULT_DIR_NAME));
+
+        defaultTask.applyProperties(properties, PROPERTIES_PREFIX);
+        downloadQueue.applyProperties(properties, PROPERTIES_PREFIX);
+        downloadQueue.setMetadataCache(metadataCache);
+
+        downloadQueue.onJobMessage((job, line) -> out.println("[#" + job.getId() + "] " + line));
+        downloadQueue.onJobProgress((job, p) -> {
+            long now = System.currentTimeMillis();
+            Long last = progressPrinted.get(job.getId());
+            if (last!=null && now-last<PROGRESS_PRINT_INTERVAL_MS) return;
+            progressPrinted.put(job.getId(), now);
+            out.println("[#" + job.getId() + "] " + p.describe());
+        });
+        downloadQueue.onJobStateChange(this::jobStateChanged);
+    }
+
+    public DownloadQueue getQueue() {
+        return downloadQueue;
+    }
+
+    /**
+     * Command template for submitted URLs.
+     * @return
+     */
+    public VideoDownloaderCommand getDefaultTask() {
+        return defaultTask;
+    }
+
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Journal jobs and resume unfinished jobs of the previous run.
+     */
+    public void enableJournal(){
+        jobJournal = new JobJournal(resolveAppFile(JobJournal.DEFAULT_FILE_NAME));
+        downloadQueue.setJournal(jobJournal);
+        jobJournal.recover().forEach((id, vdc) -> {
+            boolean paused = jobJournal.isPaused(id);
+            DownloadJob job = downloadQueue.resume(id, vdc, paused);
+            out.println("[#" + job.getId() + "] " + (paused ? "paused job " : "resume unfinished job ") + vdc.getUrl());
+        });
+    }
+
+    /**
+     * Start local HTTP API on loopback interface.
+     * @param port
+     * @throws IOException
+     */
+    public void startHttpApi(int port) throws IOException{
+        httpApi = new HttpApiServer(downloadQueue, defaultTask, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        httpApi.start();
+        out.println("HTTP API listening on " + httpApi.getAddress());
+    }
+
+    /**
+     * @return HTTP API port from properties, 0 if disabled
+     */
+    public int getHttpPortProperty(){
+        return properties.getInt(PROPERTIES_PREFIX + ".http_port", 0);
+    }
+
+    /**
+     * Submit URL with default task options.
+     * @param url
+     * @return job or null for blank line or comment
+     */
+    public DownloadJob submit(String url){
+        url = url.trim();
+        if (url.isEmpty() || url.startsWith("#")) return null;
+        VideoDownloaderCommand vdc = new VideoDownloaderCommand(defaultTask);
+        vdc.setUrl(url);
+        DownloadJob job = downloadQueue.submit(vdc);
+        out.println("[#" + job.getId() + "] queued " + url);
+        return job;
+    }
+
+    /**
+     * Submit URLs line by line until end of stream.
+     * @param is
+     * @throws IOException
+     */
+    public void submitAll(InputStream is) throws IOException{
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
+        String line;
+        while((line = reader.readLine()) != null){
+            submit(line);
+        }
+    }
+
+    /**
+     * Block until there are no queued or running jobs, paused jobs are not waited for.
+     * @return true if all jobs were downloaded successfully
+     * @throws InterruptedException
+     */
+    public boolean awaitIdle() throws InterruptedException{
+        synchronized(idleLock){
+            while(downloadQueue.isBusy()) idleLock.wait();
+        }
+        return !anyFailed;
+    }
+
+    /**
+     * Stop processes, unfinished journaled jobs are resumed on the next start.
+     */
+    public void shutdown(){
+        if (httpApi!=null) httpApi.stop();
+        downloadQueue.shutdown();
+        if (jobJournal!=null) jobJournal.close();
+    }
+
+    protected void jobStateChanged(DownloadJob job){
+        DownloadJobState state = job.getState();
+        if (!state.isActive()){
+            progressPrinted.remove(job.getId());
+            if (state==DownloadJobState.FAILED) anyFailed = true;
+            out.println("[#" + job.getId() + "] " + state.toString().toUpperCase() + " " + job.getUrl());
+            synchronized(idleLock){
+                idleLock.notifyAll();
+            }
+        }else if (state==DownloadJobState.RETRYING){
+            out.println("[#" + job.getId() + "] retrying, attempt " + job.getAttempt());
+        }else if (state==DownloadJobState.PAUSED){
+            out.println("[#" + job.getId() + "] paused " + job.getUrl());
+            synchronized(idleLock){
+                idleLock.notifyAll();
+            }
+        }
+    }
+
+    protected Path resolveAppFile(String fileName){
+        return Paths.get(properties.getFilePath()).toAbsolutePath().resolveSibling(fileName);
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl.cli;
+
+import com.cyber.util.ApplicationProperties;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headless entry point, doesn't load AWT/Swing classes.
+ * <pre>
+ * java -cp ytdl-gui.jar com.cyber.ytdl.cli.Main [options] [URL...]
+ * </pre>
+ *
+ * @author Kirill Bereznyakov
+ */
+public class Main {
+
+    private static final String USAGE = String.join("\n",
+        "Usage: com.cyber.ytdl.cli.Main [options] [URL...]",
+        "  -a, --batch-file FILE   read URLs from file, one per line (- for stdin)",
+        "  -p, --parallel N        max parallel downloads",
+        "      --per-host N        max parallel downloads per host",
+        "      --adaptive          adapt parallel downloads to throughput and rate limiting,",
+        "                          -p and --per-host are upper bounds",
+        "  -q, --quality Q         best, 2160, 1440, 1080, 720, 480, 360, audio",
+        "  -o, --output DIR        output directory",
+        "  -d, --downloader EXE    downloader executable",
+        "      --properties FILE   properties file (default app.properties)",
+        "      --http PORT         start HTTP API on localhost (0 to disable, default from properties)",
+        "      --daemon            keep running after the queue is empty, read URLs from stdin,",
+        "                          journal jobs and resume unfinished ones on start",
+        "  -h, --help              show this help",
+        "Without URLs and batch file URLs are read from stdin.",
+        "Exit code is 0 if all downloads succeeded, 1 otherwise.");
+
+    public static void main(String[] args) throws Exception{
+        System.setProperty("java.awt.headless", "true");
+
+        String propertiesFile = "app.properties";
+        List<String> urls = new ArrayList<>();
+        List<String> batchFiles = new ArrayList<>();
+        String parallel = null, perHost = null, quality = null, output = null, downloader = null, httpPort = null;
+        boolean daemon = false;
+        boolean adaptive = false;
+
+        for(int i=0; i<args.length; i++){
+            String arg = args[i];
+            switch(arg){
+                case "-a": case "--batch-file": batchFiles.add(value(args, ++i)); break;
+                case "-p": case "--parallel": parallel = value(args, ++i); break;
+                case "--per-host": perHost = value(args, ++i); break;
+                case "--adaptive": adaptive = true; break;
+                case "-q": case "--quality": quality = value(args, ++i); break;
+                case "-o": case "--output": output = value(args, ++i); break;
+                case "-d": case "--downloader": downloader = value(args, ++i); break;
+                case "--properties": propertiesFile = value(args, ++i); break;
+                case "--http": httpPort = value(args, ++i); break;
+                case "--daemon": daemon = true; break;
+                case "-h": case "--help":
+                    System.out.println(USAGE);
+                    return;
+                default:
+                    if (arg.startsWith("-")) exit("unknown option: " + arg);
+                    urls.add(arg);
+            }
+        }
+
+        HeadlessApp app = new HeadlessApp(new ApplicationProperties(propertiesFile));
+        if (parallel!=null) app.getQueue().setMaxParallel(Integer.parseInt(parallel));
+        if (perHost!=null) app.getQueue().setMaxPerHost(Integer.parseInt(perHost));
+        if (adaptive) app.getQueue().setAdaptiveConcurrency(true);
+        if (quality!=null) app.getDefaultTask().setQuality(quality);
+        if (output!=null) app.getDefaultTask().setOutputPath(output);
+        if (downloader!=null) app.getDefaultTask().setDownloaderExe(downloader);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(app::shutdown, "shutdown"));
+        if (daemon) app.enableJournal();
+        int port = httpPort!=null ? Integer.parseInt(httpPort) : app.getHttpPortProperty();
+        if (port>0) app.startHttpApi(port);
+
+        urls.forEach(app::submit);
+        boolean stdinUsed = false;
+        for(String file: batchFiles){
+            if (file.equals("-")){
+                stdinUsed = true;
+                app.submitAll(System.in);
+            }else{
+                try(InputStream is = new FileInputStream(file)){
+                    app.submitAll(is);
+                }
+            }
+        }
+
+        if (daemon){
+            if (!stdinUsed) app.submitAll(System.in);
+            // resident until killed, shutdown hook keeps unfinished jobs for the next start
+            Thread.currentThread().join();
+        }
+
+        if (urls.isEmpty() && batchFiles.isEmpty()) app.submitAll(System.in);
+        System.exit(app.awaitIdle() ? 0 : 1);
+    }
+
+    private static String value(String[] args, int i){
+        if (i>=args.length) exit("missing value for " + args[i-1]);
+        return args[i];
+    }
+
+    private static void exit(String message){
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl.gui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+
+/**
+ * Console lines kept in a fixed-capacity ring buffer, the oldest lines are dropped.
+ * Shown by JList, which lays out only visible rows, so memory and append cost
+ * do not depend on the session length.
+ * <p>
+ * {@link #append(String)} may be called from any thread: lines are collected
+ * and moved into the ring on EDT in one step per event loop pass.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class ConsoleListModel extends AbstractListModel<String>{
+
+    public static final int DEFAULT_CAPACITY = 5000;
+
+    private final String[] lines;
+    private int head = 0;   // index of the oldest line
+    private int size = 0;
+
+    private final Object pendingLock = new Object();
+    private List<String> pending = new ArrayList<>();
+    private Runnable onFlush;
+
+    public ConsoleListModel(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ConsoleListModel(int capacity){
+        if (capacity<1) throw new IllegalArgumentException("capacity < 1");
+        this.lines = new String[capacity];
+    }
+
+    public int getCapacity(){
+        return lines.length;
+    }
+
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return lines[(head + index) % lines.length];
+    }
+
+    /**
+     * Thread-safe. Multi-line text is split into separate rows.
+     * @param text
+     */
+    public void append(String text){
+        boolean schedule;
+        synchronized(pendingLock){
+            schedule = pending.isEmpty();
+            int start = 0;
+            int end;
+            while((end = text.indexOf('\n', start)) >= 0){
+                pending.add(text.substring(start, end));
+                start = end + 1;
+            }
+            pending.add(text.substring(start));
+            // EDT is behind: lines older than the ring capacity would be dropped by flush anyway
+            if (pending.size() >= 2*lines.length) pending.subList(0, pending.size() - lines.length).clear();
+        }
+        if (schedule) SwingUtilities.invokeLater(this::flush);
+    }
+
+    /**
+     * Remove all lines. Must be called from EDT.
+     */
+    public void clear(){
+        synchronized(pendingLock){
+            pending.clear();
+        }
+        if (size==0) return;
+        int last = size - 1;
+        Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+        fireIntervalRemoved(this, 0, last);
+    }
+
+    /**
+     * Handler called on EDT after new lines are added, e.g. to scroll to the end.
+     * @param onFlush
+     */
+    public void onFlush(Runnable onFlush){
+        this.onFlush = onFlush;
+    }
+
+    protected void flush(){
+        List<String> batch;
+        synchronized(pendingLock){
+            if (pending.isEmpty()) return;
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        int capacity = lines.length;
+        int from = batch.size() > capacity ? batch.size() - capacity : 0;
+        int added = batch.size() - from;
+        int dropped = Math.max(0, size + added - capacity);
+
+        for(int i=from; i<batch.size(); i++){
+            lines[(head + size) % capacity] = batch.get(i);
+            if (size<capacity){
+                size++;
+            }else{
+                head = (head + 1) % capacity;
+            }
+        }
+
+        if (dropped>0) fireIntervalRemoved(this, 0, dropped - 1);
+        fireIntervalAdded(this, size - added, size - 1);
+        if (onFlush!=null) onFlush.run();
+    }
+
+}
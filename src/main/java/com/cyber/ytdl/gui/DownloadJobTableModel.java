@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl.gui;
+
+import com.cyber.util.Units;
+import com.cyber.ytdl.DownloadJob;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Jobs table model. Must be updated from EDT.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class DownloadJobTableModel extends AbstractTableModel{
+
+    private static final String[] COLUMNS = {"#", "Title", "Size", "State", "Progress", "Speed", "ETA"};
+
+    private final List<DownloadJob> jobs = new ArrayList<>();
+
+    @Override
+    public int getRowCount() {
+        return jobs.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        DownloadJob job = jobs.get(row);
+        switch(column){
+            case 0: return job.getId();
+            case 1: return job.getTitle();
+            case 2: return Units.formatSize(job.getEstimatedSize());
+            case 3: return job.getState();
+            case 4: return String.format("%.1f%%", job.getPercent());
+            case 5: return job.getState().isRunning() ? Units.formatSpeed(job.getSpeed()) : "";
+            case 6: return job.getState().isRunning() ? Units.formatDuration(job.getEta()) : "";
+            default: return "";
+        }
+    }
+
+    /**
+     * Add new job or refresh existing job row.
+     * @param job
+     */
+    public void update(DownloadJob job){
+        int row = jobs.indexOf(job);
+        if (row<0){
+            jobs.add(job);
+            fireTableRowsInserted(jobs.size()-1, jobs.size()-1);
+        }else{
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    public DownloadJob getJob(int row){
+        return jobs.get(row);
+    }
+
+    /**
+     * Remove jobs which are not in the list.
+     * @param actualJobs
+     */
+    public void retain(List<DownloadJob> actualJobs){
+        jobs.retainAll(actualJobs);
+        fireTableDataChanged();
+    }
+
+}
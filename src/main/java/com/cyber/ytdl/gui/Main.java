@@ -25,10 +25,17 @@
 package com.cyber.ytdl.gui;
 
 import com.cyber.util.ApplicationProperties;
+import com.cyber.util.SingleInstance;
+import com.cyber.ytdl.MetadataCache;
 import java.awt.Font;
 import java.awt.Toolkit;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import javax.swing.SwingUtilities;
 import javax.swing.UIDefaults;
 import javax.swing.UIManager;
 import javax.swing.plaf.FontUIResource;
@@ -40,12 +47,18 @@ import javax.swing.plaf.FontUIResource;
 public class Main {
 
     private static final int BASE_DPI = 96;
+    private static final String INSTANCE_DIR_NAME = "ytdl-gui.instance";
 
     public static void main(String[] args) throws Exception{
 
         // Properties
         ApplicationProperties properties = new ApplicationProperties("app.properties");
 
+        // hand urls over to the running instance, before any AWT initialization
+        SingleInstance instance = new SingleInstance(Paths.get(properties.getFilePath())
+            .toAbsolutePath().resolveSibling(INSTANCE_DIR_NAME));
+        if (instance.forward(Arrays.asList(args))) return;
+
         // init System LaF
         UIManager.setLookAndFeel( UIManager.getSystemLookAndFeelClassName() );
 
@@ -55,9 +68,33 @@ public class Main {
 
         MainFrame main = new MainFrame(properties);
         main.showAtCenter();
+        SwingUtilities.invokeLater(() -> submitUrls(main, Arrays.asList(args)));
+
+        try{
+            instance.listen(urls -> SwingUtilities.invokeLater(() -> {
+                main.toFront();
+                submitUrls(main, urls);
+            }));
+        }catch(IOException | RuntimeException ex){
+            System.err.println("single instance listen error: " + ex.getMessage());
+        }
 
     }
 
+    /**
+     * Submit http(s) URLs only, anything else passed to the launch is ignored.
+     */
+    private static void submitUrls(MainFrame main, List<String> urls){
+        for(String url: urls){
+            if (url.isBlank()) continue;
+            if (MetadataCache.isFetchableUrl(url)){
+                main.submitUrl(url);
+            }else{
+                System.err.println("not an http(s) URL, ignored: " + url);
+            }
+        }
+    }
+
     public static void setDefaultFontsScale(float scale){
         UIDefaults defaults = UIManager.getDefaults();
         Enumeration keys = defaults.keys();
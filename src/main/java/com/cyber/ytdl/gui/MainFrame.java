@@ -26,18 +26,38 @@ package com.cyber.ytdl.gui;
 
 import com.cyber.ui.swing.BagCell;
 import com.cyber.ui.swing.BaseFrameWithProperties;
+import com.cyber.ui.swing.DocumentListenerAdapter;
 import com.cyber.ui.swing.HBox;
 import com.cyber.util.ApplicationProperties;
+import com.cyber.util.ProcessRuntime;
 import com.cyber.util.RunnableProcess;
+import com.cyber.util.Units;
+import com.cyber.ytdl.DownloadJob;
+import com.cyber.ytdl.DownloadJobState;
+import com.cyber.ytdl.DownloadPriority;
+import com.cyber.ytdl.DownloadStage;
+import com.cyber.ytdl.DownloadQueue;
+import com.cyber.ytdl.JobJournal;
+import com.cyber.ytdl.JobLog;
+import com.cyber.ytdl.MetadataCache;
+import com.cyber.ytdl.VideoMetadata;
 import com.cyber.ytdl.VideoDownloader;
 import com.cyber.ytdl.VideoDownloaderCommand;
 import com.cyber.ytdl.VideoDownloaderSourceFormat;
+import com.cyber.ytdl.api.HttpApiServer;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.GridBagLayout;
 import java.awt.Rectangle;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
@@ -45,14 +65,19 @@ import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JMenu;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
+import javax.swing.JTable;
 import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 /**
  *
@@ -77,11 +102,26 @@ public class MainFrame extends BaseFrameWithProperties{
 
     private JProgressBar progressBar;
 
-    private JTextArea processOutputText;
+    private JTable jobTable;
+    private JScrollPane jobScrollPane;
+    private DownloadJobTableModel jobTableModel;
+
+    private JList<String> processOutputList;
+    private ConsoleListModel processOutputModel;
     private JScrollPane processOutputScrollPane;
 
     // Properties
-    private VideoDownloader downloader;
+    private DownloadQueue downloadQueue;
+    private JobJournal jobJournal;
+    private MetadataCache metadataCache;
+    private JobLog jobLog;
+    private UiUpdateDispatcher uiDispatcher;
+    private HttpApiServer httpApi;
+    private int httpPort = 0;
+    private boolean jobLogEnabled = false;
+    private Timer prefetchTimer;
+    private CompletableFuture<VideoMetadata> prefetch;
+    private boolean prefetchEnabled = true;
     private VideoDownloaderCommand defaultTask;
 
     // Const
@@ -89,6 +129,8 @@ public class MainFrame extends BaseFrameWithProperties{
     private static final String VERSION = "0.4.1";
     private static final String TITLE = "Youtube Downloader GUI " + VERSION;
     private static final String PROPERTIES_PREFIX = "frame.main";
+    private static final String URL_LABEL_TEXT = "Download from URL:";
+    private static final int PREFETCH_DELAY_MS = 800;
 
 
     public MainFrame(ApplicationProperties properties) {
@@ -108,12 +150,24 @@ public class MainFrame extends BaseFrameWithProperties{
 
         // Properties
         applyProperties(properties);
+
+        // Unfinished jobs from the previous session
+        resumeJobsAction();
+
+        httpPort = properties.getInt(PROPERTIES_PREFIX + ".http_port", httpPort);
+        startHttpApi(httpPort);
     }
 
     @Override
     public void initComponents(JPanel root) {
 
-        downloader = new VideoDownloader();
+        downloadQueue = new DownloadQueue();
+        jobJournal = new JobJournal(resolveAppFile(JobJournal.DEFAULT_FILE_NAME));
+        metadataCache = new MetadataCache(resolveAppFile(MetadataCache.DEFAULT_DIR_NAME));
+        downloadQueue.setJournal(jobJournal);
+        downloadQueue.setMetadataCache(metadataCache);
+        jobLog = new JobLog(resolveAppFile(JobLog.DEFAULT_DIR_NAME));
+        uiDispatcher = new UiUpdateDispatcher();
         defaultTask = new VideoDownloaderCommand();
 
         ImageIcon icon = new ImageIcon(getClass().getResource("/icon.png"));
@@ -124,7 +178,7 @@ public class MainFrame extends BaseFrameWithProperties{
         outputPathComboBox = new JComboBox<>();
         outputPathComboBox.setEditable(true);
 
-        urlLabel = new JLabel("Download from URL:");
+        urlLabel = new JLabel(URL_LABEL_TEXT);
         urlTextField = new JTextField("");
         selectOutputLabel = new JLabel("Save to: ");
 
@@ -143,14 +197,30 @@ public class MainFrame extends BaseFrameWithProperties{
         subtitlesAllowedCheckBox = new JCheckBox("Subtitles");
         subtitlesAllowedCheckBox.setToolTipText("Download all subtitles if possible");
 
-        processOutputText = new JTextArea();
-        processOutputScrollPane = new JScrollPane(processOutputText);
+        processOutputModel = new ConsoleListModel(
+            properties.getInt(PROPERTIES_PREFIX + ".console_lines", ConsoleListModel.DEFAULT_CAPACITY));
+        processOutputList = new JList<>(processOutputModel);
+        processOutputList.setFont(new Font(Font.MONOSPACED, Font.PLAIN, processOutputList.getFont().getSize()));
+        processOutputList.setPrototypeCellValue("W");    // fixed row height, no per-row measuring
+        processOutputScrollPane = new JScrollPane(processOutputList);
         processOutputScrollPane.setPreferredSize(new Dimension(600,300));
         processOutputScrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
 
         progressBar = new JProgressBar(0, 100);
         progressBar.setStringPainted(true);
         progressBar.setVisible(false);
+
+        jobTableModel = new DownloadJobTableModel();
+        jobTable = new JTable(jobTableModel);
+        jobTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        jobTable.getColumnModel().getColumn(0).setMaxWidth(50);
+        jobTable.getColumnModel().getColumn(2).setMaxWidth(80);
+        jobTable.getColumnModel().getColumn(3).setMaxWidth(80);
+        jobTable.getColumnModel().getColumn(4).setMaxWidth(80);
+        jobTable.getColumnModel().getColumn(5).setMaxWidth(90);
+        jobTable.getColumnModel().getColumn(6).setMaxWidth(70);
+        jobScrollPane = new JScrollPane(jobTable);
+        jobScrollPane.setPreferredSize(new Dimension(600,120));
     }
 
     protected void initLayout(JPanel root){
@@ -180,6 +250,9 @@ public class MainFrame extends BaseFrameWithProperties{
         root.add(progressBar, BagCell.next().fillX().endRow() );
 
         // Row 5
+        root.add(jobScrollPane, BagCell.next().fillBoth().weight(1.0, 0.3).endRow() );
+
+        // Row 6
         root.add(processOutputScrollPane, BagCell.next().fillBoth().weight(1.0, 1.0).endRow() );
 
         pack();
@@ -188,13 +261,16 @@ public class MainFrame extends BaseFrameWithProperties{
     }
 
     protected void bindActions(){
-        downloadButton.addActionListener(e -> {
-            if (downloader.isAlive()){
-                stopDownloadAction();
-            }else{
-                startDownloadAction();
-            }
-        });
+        downloadButton.addActionListener(e -> startDownloadAction());
+
+        prefetchTimer = new Timer(PREFETCH_DELAY_MS, e -> prefetchAction());
+        prefetchTimer.setRepeats(false);
+
+        urlTextField.getDocument().addDocumentListener(DocumentListenerAdapter.onChange(e -> {
+            urlLabel.setText(URL_LABEL_TEXT);
+            cancelPrefetch();
+            if (prefetchEnabled) prefetchTimer.restart();
+        }));
 
         pasteButton.addActionListener(e -> {
             urlTextField.setText("");
@@ -205,19 +281,68 @@ public class MainFrame extends BaseFrameWithProperties{
             setOutputPath( browseOutputPath( getOutputPath() ) );
         });
 
-        downloader.onDownloadProgressValue(value -> progressBar.setValue(value.intValue()));
-        downloader.onDownloadProgressString(progressBar::setString);
+        // Queue handlers run on process reader threads, UI is updated by the dispatcher frames on EDT
+        downloadQueue.onJobProgress(uiDispatcher::postProgress);
 
         progressBar.addChangeListener(e -> updateProgress());
 
-        downloader.onMessage(this::println);
-        downloader.onTermination(this::stopDownloadAction);
-        downloader.onComplete(() -> println("SUCCESSFULL COMPLETE"));
-        downloader.onError(() -> JOptionPane.showMessageDialog( this,
-            "<html><h2>Downloading error</h2>"
-            + "An error has occurred. Please try downloading later<br>",
-            "Downloading error", JOptionPane.ERROR_MESSAGE)
-        );
+        downloadQueue.onJobMessage((job, line) -> {
+            if (jobLogEnabled) jobLog.append(job, line);
+            println("[#" + job.getId() + "] " + line);
+        });
+        downloadQueue.onJobStateChange(job -> {
+            jobLog.onStateChange(job);
+            uiDispatcher.postJobChange(job);
+        });
+
+        uiDispatcher.onMessages(lines -> lines.forEach(processOutputModel::append));
+        uiDispatcher.onJobChange(this::updateJobAction);
+        uiDispatcher.onProgress(updated -> {
+            updated.forEach((job, line) -> {
+                jobTableModel.update(job);
+                progressBar.setString("[#" + job.getId() + "] " + formatStage(job) + line);
+            });
+            progressBar.setValue(getOverallProgress());
+        });
+        uiDispatcher.start();
+
+        processOutputModel.onFlush(() ->
+            processOutputList.ensureIndexIsVisible(processOutputModel.getSize() - 1));
+
+        JPopupMenu jobTableMenu = new JPopupMenu();
+
+        jobTableMenu
+            .add("Cancel")
+            .addActionListener(e -> cancelSelectedJobsAction());
+
+        jobTableMenu
+            .add("Pause")
+            .addActionListener(e -> pauseSelectedJobsAction());
+
+        jobTableMenu
+            .add("Resume")
+            .addActionListener(e -> resumeSelectedJobsAction());
+
+        JMenu priorityMenu = new JMenu("Priority");
+        for(DownloadPriority priority: DownloadPriority.values()){
+            priorityMenu
+                .add(priority.toString())
+                .addActionListener(e -> setSelectedJobsPriorityAction(priority));
+        }
+        jobTableMenu.add(priorityMenu);
+
+        jobTableMenu
+            .add("Cancel all")
+            .addActionListener(e -> stopDownloadAction());
+
+        jobTableMenu
+            .add("Clear finished")
+            .addActionListener(e -> {
+                downloadQueue.clearFinished();
+                jobTableModel.retain(downloadQueue.getJobs());
+            });
+
+        jobTable.setComponentPopupMenu(jobTableMenu);
 
         JPopupMenu downloaderComboBoxMenu = new JPopupMenu();
 
@@ -241,16 +366,25 @@ public class MainFrame extends BaseFrameWithProperties{
             .add("Paste")
             .addActionListener(e -> urlTextField.paste());
 
+        urlTextFieldMenu
+            .add("Get info")
+            .addActionListener(e -> fetchInfoAction());
+
         urlTextField.setComponentPopupMenu(urlTextFieldMenu);
     }
 
     public void updateDownloaderAction(){
         prepareProgressUI();
-        new Thread(
-            new RunnableProcess(downloaderComboBox.getSelectedItem().toString(), "-U")
-                .onOutput(this::println)
-                .onExit(p -> println("EXIT " + p.exitValue()))
-        ).start();
+        RunnableProcess proc = new RunnableProcess(downloaderComboBox.getSelectedItem().toString(), "-U")
+            .onOutput(this::println)
+            .onExit(p -> println("EXIT " + p.exitValue()));
+        ProcessRuntime.getDefault().execute(() -> {
+            try{
+                proc.run();
+            }catch(RuntimeException ex){
+                println(ex.getMessage());
+            }
+        });
     }
 
     protected List<String> listComboBox(JComboBox<String> comboBox){
@@ -292,7 +426,7 @@ public class MainFrame extends BaseFrameWithProperties{
     }
 
     protected void updateProgress(){
-        if (downloader.isAlive()){
+        if (downloadQueue.isBusy()){
             progressBar.setVisible(true);
             setTitle("["+progressBar.getValue()+"%] " + TITLE);
         }else{
@@ -302,34 +436,191 @@ public class MainFrame extends BaseFrameWithProperties{
     }
 
     protected void prepareProgressUI(){
-        processOutputText.setText("");
+        processOutputModel.clear();
         processOutputScrollPane.scrollRectToVisible(new Rectangle(0,0,0,0));
         progressBar.setValue(0);
         progressBar.setString("");
         updateProgress();
     }
 
-    protected void startDownloadAction(){
+    /**
+     * @return average progress of queued and running jobs
+     */
+    protected int getOverallProgress(){
+        return (int)downloadQueue.getJobs().stream()
+            .filter(job -> job.getState().isActive())
+            .mapToDouble(DownloadJob::getPercent)
+            .average()
+            .orElse(0);
+    }
+
+    protected void updateJobAction(DownloadJob job){
+        jobTableModel.update(job);
+
+        if (job.getState()==DownloadJobState.DONE){
+            println("[#" + job.getId() + "] SUCCESSFULL COMPLETE " + formatStageDurations(job));
+        }else if (job.getState()==DownloadJobState.FAILED){
+            println("[#" + job.getId() + "] DOWNLOADING ERROR, please try downloading later");
+        }
+
+        progressBar.setValue(getOverallProgress());
+        updateProgress();
+    }
+
+    /**
+     * @return current stage like "download 1/2: " or empty string
+     */
+    protected String formatStage(DownloadJob job){
+        DownloadStage stage = job.getStage();
+        if (stage==null) return "";
+        if (stage==DownloadStage.DOWNLOAD) return stage + " " + job.getStages().getFormatInfo() + ": ";
+        return stage + ": ";
+    }
+
+    /**
+     * @return time spent by stages like "(extract 1.2 s, download 30.5 s, merge 2.0 s)"
+     */
+    protected String formatStageDurations(DownloadJob job){
+        return job.getStages().getStageDurations().entrySet().stream()
+            .map(e -> String.format("%s %.1f s", e.getKey(), e.getValue() / 1000.0))
+            .collect(Collectors.joining(", ", "(", ")"));
+    }
+
+    protected void resumeJobsAction(){
+        jobJournal.recover().forEach((id, vdc) -> {
+            boolean paused = jobJournal.isPaused(id);
+            DownloadJob job = downloadQueue.resume(id, vdc, paused);
+            println("[#" + job.getId() + "] " + (paused ? "restore paused job\n" : "resume unfinished job\n") + vdc.printInfo());
+        });
+    }
+
+    protected void pauseSelectedJobsAction(){
+        for(int row: jobTable.getSelectedRows()){
+            downloadQueue.pause(jobTableModel.getJob(jobTable.convertRowIndexToModel(row)));
+        }
+    }
+
+    protected void setSelectedJobsPriorityAction(DownloadPriority priority){
+        for(int row: jobTable.getSelectedRows()){
+            downloadQueue.setPriority(jobTableModel.getJob(jobTable.convertRowIndexToModel(row)), priority);
+        }
+    }
+
+    protected void resumeSelectedJobsAction(){
+        for(int row: jobTable.getSelectedRows()){
+            downloadQueue.resume(jobTableModel.getJob(jobTable.convertRowIndexToModel(row)));
+        }
+    }
+
+    protected void cancelSelectedJobsAction(){
+        for(int row: jobTable.getSelectedRows()){
+            downloadQueue.cancel(jobTableModel.getJob(jobTable.convertRowIndexToModel(row)));
+        }
+    }
+
+    /**
+     * Start background metadata extraction for the URL typed or pasted, so the
+     * download starts with extraction already done.
+     */
+    protected void prefetchAction(){
+        String url = urlTextField.getText();
+        if (!MetadataCache.isFetchableUrl(url)) return;
+
+        CompletableFuture<VideoMetadata> future = metadataCache.fetchAsync(buildCommand());
+        prefetch = future;
+        future.thenAccept(metadata -> SwingUtilities.invokeLater(() -> {
+            if (prefetch==future) urlLabel.setText(URL_LABEL_TEXT + " " + metadata);
+        }));
+    }
+
+    /**
+     * Cancel superseded prefetch. Extraction process is stopped unless a queued job waits for it.
+     */
+    protected void cancelPrefetch(){
+        prefetchTimer.stop();
+        if (prefetch!=null){
+            prefetch.cancel(false);
+            prefetch = null;
+        }
+    }
+
+    protected void fetchInfoAction(){
         if (urlTextField.getText().isEmpty()) return;
-        prepareProgressUI();
+        VideoDownloaderCommand vdc = buildCommand();
+        println("get info: " + vdc.getUrl());
+
+        metadataCache.fetchAsync(vdc).whenComplete((metadata, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex!=null){
+                println("get info error: " + (ex.getCause()!=null ? ex.getCause().getMessage() : ex.getMessage()));
+            }else{
+                printMetadata(metadata);
+            }
+        }));
+    }
+
+    protected void printMetadata(VideoMetadata metadata){
+        StringBuilder sb = new StringBuilder();
+        sb.append("title: ").append(metadata).append("\n");
+        if (metadata.isPlaylist()){
+            sb.append("playlist entries: ").append(metadata.getEntries().size()).append("\n");
+        }else{
+            sb.append("duration: ").append((long)metadata.getDuration()).append(" s\n");
+        }
 
+        sb.append("available:");
+        Arrays.stream(VideoDownloaderSourceFormat.getAvailable(metadata.getMaxHeight())).forEach(f -> {
+            sb.append(" ").append(f);
+            long size = metadata.estimateSize(f);
+            if (size>=0) sb.append(" (").append(Units.formatSize(size)).append(")");
+        });
+
+        println(sb.toString());
+    }
+
+    protected VideoDownloaderCommand buildCommand(){
+        return buildCommand(urlTextField.getText());
+    }
+
+    protected VideoDownloaderCommand buildCommand(String url){
         VideoDownloaderCommand vdc = new VideoDownloaderCommand(defaultTask);
-        vdc.setUrl(urlTextField.getText());
+        vdc.setUrl(url);
         vdc.setSourceFormat((VideoDownloaderSourceFormat)qualityComboBox.getSelectedItem());
         vdc.setDownloaderExe(downloaderComboBox.getSelectedItem().toString());
         vdc.setOutputPath(getOutputPath());
         vdc.setCompatibleFormat(compatibilityCheckBox.isSelected());
         vdc.setPlaylistAllowed(playlistAllowedCheckBox.isSelected());
         vdc.setSubtitlesAllowed(subtitlesAllowedCheckBox.isSelected());
+        return vdc;
+    }
 
-        println(vdc.printInfo());
+    protected void startDownloadAction(){
+        if (urlTextField.getText().isEmpty()) return;
+        if (!downloadQueue.isBusy()) prepareProgressUI();
+
+        VideoDownloaderCommand vdc = buildCommand();
+        DownloadJob job = downloadQueue.submit(vdc);
+        cancelPrefetch();   // the queued job keeps its own subscription to the same extraction
+        println("[#" + job.getId() + "] " + vdc.printInfo());
+        updateProgress();
+    }
 
-        downloader.execute(vdc);
-        downloadButton.setText("Stop");
+    /**
+     * Queue url with the current form settings, used for urls handed over by another launch.
+     * Must be called on EDT.
+     * @param url
+     */
+    public void submitUrl(String url){
+        if (url.isBlank()) return;
+        if (!downloadQueue.isBusy()) prepareProgressUI();
+
+        VideoDownloaderCommand vdc = buildCommand(url.trim());
+        DownloadJob job = downloadQueue.submit(vdc);
+        println("[#" + job.getId() + "] " + vdc.printInfo());
+        updateProgress();
     }
 
     protected boolean stopDownloadAction(){
-        if (downloader.isAlive()){
+        if (downloadQueue.isBusy()){
             int result = JOptionPane.showConfirmDialog( this,
                 "Downloading process is not fully completed. Abort anyway?",
                 "Interrupt process",
@@ -337,23 +628,57 @@ public class MainFrame extends BaseFrameWithProperties{
                 JOptionPane.WARNING_MESSAGE);
 
             if (result!=JOptionPane.YES_OPTION) return false;
-            downloader.destroy();
+            downloadQueue.cancelAll();
         }
-        downloadButton.setText("Download");
         updateProgress();
         return true;
     }
 
 
+    /**
+     * Start local HTTP API on loopback interface, jobs submitted over HTTP are shown in the jobs table.
+     * @param port port or 0 to disable
+     */
+    protected void startHttpApi(int port){
+        if (port<=0) return;
+        try{
+            httpApi = new HttpApiServer(downloadQueue, defaultTask, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            httpApi.start();
+            println("HTTP API listening on " + httpApi.getAddress());
+        }catch(IOException ex){
+            println("HTTP API start error: " + ex.getMessage());
+        }
+    }
+
+    protected Path resolveAppFile(String fileName){
+        return Paths.get(properties.getFilePath()).toAbsolutePath().resolveSibling(fileName);
+    }
+
+    /**
+     * Thread-safe, the line is shown on the next UI frame.
+     * @param str
+     */
     public void println(String str){
-        processOutputText.append(str);
-        processOutputText.append("\n");
-        processOutputText.setCaretPosition(processOutputText.getDocument().getLength());
+        uiDispatcher.postMessage(str);
     }
 
     @Override
     public void dispose() {
-        if (!stopDownloadAction()) return;
+        if (downloadQueue.isBusy()){
+            int result = JOptionPane.showConfirmDialog( this,
+                "Downloading process is not fully completed. Exit anyway?\n"
+                + "Unfinished downloads will be resumed on the next start.",
+                "Interrupt process",
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.WARNING_MESSAGE);
+
+            if (result!=JOptionPane.YES_OPTION) return;
+        }
+        uiDispatcher.stop();
+        if (httpApi!=null) httpApi.stop();
+        downloadQueue.shutdown();
+        jobJournal.close();
+        jobLog.close();
         super.dispose();
     }
 
@@ -364,20 +689,11 @@ public class MainFrame extends BaseFrameWithProperties{
         this.setSize( properties.getInt(prefix + ".width", getWidth()),
                       properties.getInt(prefix + ".height", getHeight()) );
 
-        defaultTask.setDebug( properties.getBool(prefix + ".debug", defaultTask.isDebug()));
-        defaultTask.setSocketTimeout( properties.getInt(prefix + ".socket_timeout", defaultTask.getSocketTimeout()));
-        defaultTask.setConnectRetries( properties.getInt(prefix + ".connect_retries", defaultTask.getConnectRetries()));
-        defaultTask.setExtractorRetries( properties.getInt(prefix + ".extractor_retries", defaultTask.getExtractorRetries()));
-        defaultTask.setTaskRetries( properties.getInt(prefix + ".task_retries", defaultTask.getTaskRetries()));
-        defaultTask.setQuality( properties.getProperty(prefix + ".quality", defaultTask.getQuality()));
-        defaultTask.setDownloaderExe( properties.getProperty(prefix + ".downloader", defaultTask.getDownloaderExe()));
-        defaultTask.setCompatibleFormat( properties.getBool(prefix + ".compatibility", defaultTask.isCompatibleFormat()));
-        defaultTask.setPlaylistAllowed( properties.getBool(prefix + ".allow_playlist", defaultTask.isPlaylistAllowed()));
-        defaultTask.setSubtitlesAllowed( properties.getBool(prefix + ".allow_subtitles", defaultTask.isSubtitlesAllowed()));
-        defaultTask.setThumbnailAllowed( properties.getBool(prefix + ".allow_thumbnails", defaultTask.isThumbnailAllowed()));
-        defaultTask.setOutputPath( properties.getProperty(prefix + ".output_path", defaultTask.getOutputPath()));
-        defaultTask.setFileNamesPattern( properties.getProperty(prefix + ".file_names_pattern", defaultTask.getFileNamesPattern()));
-        defaultTask.setProxyUrl( properties.getProperty( prefix + ".proxy", ""));
+        defaultTask.applyProperties(properties, prefix);
+        downloadQueue.applyProperties(properties, prefix);
+        prefetchEnabled = properties.getBool(prefix + ".prefetch", prefetchEnabled);
+        jobLogEnabled = properties.getBool(prefix + ".job_log", jobLogEnabled);
+        uiDispatcher.setRate( properties.getInt(prefix + ".ui_refresh_rate", uiDispatcher.getRate()));
 
         qualityComboBox.setSelectedItem(defaultTask.getSourceFormat());
         downloaderComboBox.setSelectedItem(defaultTask.getDownloaderExe());
@@ -410,6 +726,18 @@ public class MainFrame extends BaseFrameWithProperties{
         properties.put(prefix + ".allow_subtitles", subtitlesAllowedCheckBox.isSelected());
         properties.put(prefix + ".allow_thumbnails", defaultTask.isThumbnailAllowed());
         properties.put(prefix + ".file_names_pattern", defaultTask.getFileNamesPattern());
+        properties.put(prefix + ".max_parallel_downloads", downloadQueue.getMaxParallel());
+        properties.put(prefix + ".max_downloads_per_host", downloadQueue.getMaxPerHost());
+        properties.put(prefix + ".two_phase", downloadQueue.isTwoPhase());
+        properties.put(prefix + ".batch_size", downloadQueue.getBatchSize());
+        properties.put(prefix + ".cancel_cleanup", downloadQueue.getCancelCleanup());
+        properties.put(prefix + ".scheduling", downloadQueue.getSchedulingPolicy());
+        properties.put(prefix + ".adaptive_concurrency", downloadQueue.isAdaptiveConcurrency());
+        properties.put(prefix + ".prefetch", prefetchEnabled);
+        properties.put(prefix + ".job_log", jobLogEnabled);
+        properties.put(prefix + ".ui_refresh_rate", uiDispatcher.getRate());
+        properties.put(prefix + ".http_port", httpPort);
+        properties.put(prefix + ".console_lines", processOutputModel.getCapacity());
 
         properties.put(prefix + ".output_path", outputPathComboBox.getSelectedItem());
         properties.putStringList(prefix + ".output_path_list", listComboBox(outputPathComboBox)
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2022 Kirill Bereznyakov.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.cyber.ytdl.gui;
+
+import com.cyber.ytdl.DownloadJob;
+import com.cyber.ytdl.DownloadProgress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import javax.swing.Timer;
+
+/**
+ * Collects UI events from process reader threads and hands them to EDT in batches
+ * at a fixed frame rate. Message lines are delivered in bulk, job changes are
+ * deduplicated and only the latest progress of every job is kept, so EDT load
+ * depends on the refresh rate and not on the output volume.
+ * <p>
+ * Post methods are thread-safe and lock-free except a short per-job progress copy.
+ *
+ * @author Kirill Bereznyakov
+ */
+public class UiUpdateDispatcher {
+
+    public static final int DEFAULT_RATE = 20;
+
+    private final ConcurrentLinkedQueue<String> messages = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<DownloadJob> changedJobs = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<DownloadJob,ProgressSlot> progress = new ConcurrentHashMap<>();
+    private final Timer timer;
+
+    private Consumer<List<String>> messagesHandler = lines -> {};
+    private Consumer<DownloadJob> jobChangeHandler = job -> {};
+    private Consumer<Map<DownloadJob,String>> progressHandler = map -> {};
+
+    public UiUpdateDispatcher(){
+        this(DEFAULT_RATE);
+    }
+
+    /**
+     * @param rate updates per second
+     */
+    public UiUpdateDispatcher(int rate){
+        timer = new Timer(1000 / Math.max(1, rate), e -> dispatch());
+        timer.setCoalesce(true);
+    }
+
+    public void start(){
+        timer.start();
+    }
+
+    public void stop(){
+        timer.stop();
+    }
+
+    /**
+     * Set updates per second.
+     * @param rate
+     */
+    public void setRate(int rate){
+        timer.setDelay(1000 / Math.max(1, rate));
+    }
+
+    public int getRate(){
+        return 1000 / timer.getDelay();
+    }
+
+    public void postMessage(String line){
+        messages.add(line);
+    }
+
+    public void postJobChange(DownloadJob job){
+        changedJobs.add(job);
+    }
+
+    /**
+     * Keep the progress line until the next frame, previous undelivered one is overwritten.
+     * @param job
+     * @param p reused progress holder, the line is copied
+     */
+    public void postProgress(DownloadJob job, DownloadProgress p){
+        ProgressSlot slot = progress.get(job);
+        if (slot==null) slot = progress.computeIfAbsent(job, k -> new ProgressSlot());
+        slot.set(p);
+    }
+
+    /**
+     * Handler called on EDT with all lines posted since the previous frame.
+     * @param messagesHandler
+     */
+    public void onMessages(Consumer<List<String>> messagesHandler){
+        this.messagesHandler = messagesHandler;
+    }
+
+    /**
+     * Handler called on EDT once per frame for every changed job.
+     * @param jobChangeHandler
+     */
+    public void onJobChange(Consumer<DownloadJob> jobChangeHandler){
+        this.jobChangeHandler = jobChangeHandler;
+    }
+
+    /**
+     * Handler called on EDT with the latest progress text of every job updated since the previous frame.
+     * @param progressHandler
+     */
+    public void onProgress(Consumer<Map<DownloadJob,String>> progressHandler){
+        this.progressHandler = progressHandler;
+    }
+
+    protected void dispatch(){
+        if (!messages.isEmpty()){
+            List<String> lines = new ArrayList<>();
+            String line;
+            while((line = messages.poll()) != null) lines.add(line);
+            messagesHandler.accept(lines);
+        }
+
+        if (!changedJobs.isEmpty()){
+            Set<DownloadJob> jobs = new LinkedHashSet<>();
+            DownloadJob job;
+            while((job = changedJobs.poll()) != null) jobs.add(job);
+            for(DownloadJob changed: jobs){
+                if (!changed.getState().isActive()) progress.remove(changed);
+                jobChangeHandler.accept(changed);
+            }
+        }
+
+        Map<DownloadJob,String> updated = null;
+        for(Iterator<Map.Entry<DownloadJob,ProgressSlot>> it = progress.entrySet().iterator(); it.hasNext();){
+            Map.Entry<DownloadJob,ProgressSlot> entry = it.next();
+            String text = entry.getValue().take();
+            if (!entry.getKey().getState().isActive()) it.remove();
+            if (text==null) continue;
+            if (updated==null) updated = new LinkedHashMap<>();
+            updated.put(entry.getKey(), text);
+        }
+        if (updated!=null) progressHandler.accept(updated);
+    }
+
+
+    /**
+     * Latest progress of a job, copied from the reused reader holder.
+     */
+    private static class ProgressSlot{
+        private final DownloadProgress progress = new DownloadProgress();
+        private boolean dirty;
+
+        synchronized void set(DownloadProgress p){
+            progress.copyFrom(p);
+            dirty = true;
+        }
+
+        synchronized String take(){
+            if (!dirty) return null;
+            dirty = false;
+            return progress.describe();
+        }
+    }
+
+}